@@ -1,5 +1,5 @@
 import React, { useState, useEffect, useRef, useCallback } from 'react';
-import { Document, User, DocumentVersion, DocumentUpdateRequest, SaveVersionRequest, ContentUpdateMessage, EditOperation, OperationType } from '../types';
+import { Document, User, DocumentVersion, DocumentUpdateRequest, SaveVersionRequest, VersionPage, ContentUpdateMessage, EditOperation, OperationType, OperationComponent } from '../types';
 import { apiService } from '../services/ApiService';
 import { useWebSocket } from '../hooks/useWebSocket';
 import { useAuth } from '../hooks/useAuth';
@@ -34,6 +34,8 @@ export const CollaborativeEditor: React.FC<CollaborativeEditorProps> = ({
   const [document, setDocument] = useState<Document | null>(null);
   const [activeUsers, setActiveUsers] = useState<User[]>([]);
   const [versions, setVersions] = useState<DocumentVersion[]>([]);
+  const [versionsCursor, setVersionsCursor] = useState<string | null>(null);
+  const [versionPreviews, setVersionPreviews] = useState<Record<string, string>>({});
   const [showVersionPanel, setShowVersionPanel] = useState(false);
   const [showVersionDialog, setShowVersionDialog] = useState(false);
   const [versionName, setVersionName] = useState('');
@@ -75,9 +77,9 @@ export const CollaborativeEditor: React.FC<CollaborativeEditorProps> = ({
       pastedText + 
       currentContent.substring(selectionEnd);
     
-    console.log('Paste detected, using bulk update for pasted content');
+    console.log('Paste detected, sending it as a single span operation');
 
-    webSocketService.sendBulkContentUpdate(newContent);
+    sendContentDiff(currentContent, newContent);
 
     setDocument(prev => {
       if (!prev) return null;
@@ -120,8 +122,8 @@ export const CollaborativeEditor: React.FC<CollaborativeEditorProps> = ({
     const currentLength = shadowContent.length;
 
     if (Math.abs(newContent.length - prevContent.length) > 100) {
-      console.log('Large content change detected, using bulk update');
-      webSocketService.sendBulkContentUpdate(newContent);
+      console.log('Large content change detected, sending it as a single span operation');
+      sendContentDiff(prevContent, newContent);
 
       setDocument(prev => {
         if (!prev) return null;
@@ -153,10 +155,7 @@ export const CollaborativeEditor: React.FC<CollaborativeEditorProps> = ({
           prevContent.length - newContent.length === selectionLength) {
         console.log(`Deleting selection of ${selectionLength} characters at position ${selectionStartRef.current}`);
 
-        for (let i = selectionEndRef.current - 1; i >= selectionStartRef.current; i--) {
-          const deletedChar = prevContent.charAt(i);
-          sendDeleteOperation(i, deletedChar);
-        }
+        webSocketService.sendOperation('delete', selectionStartRef.current, '', selectionLength);
       } else {
         const diffIndex = findDiffIndex(prevContent, newContent);
         if (diffIndex >= 0 && diffIndex < currentLength) {
@@ -214,6 +213,35 @@ export const CollaborativeEditor: React.FC<CollaborativeEditorProps> = ({
     return minLength;
   };
 
+  const sendContentDiff = (oldContent: string, newContent: string): void => {
+    const minLength = Math.min(oldContent.length, newContent.length);
+
+    let prefix = 0;
+    while (prefix < minLength && oldContent[prefix] === newContent[prefix]) {
+      prefix++;
+    }
+
+    let suffix = 0;
+    while (suffix < minLength - prefix &&
+           oldContent[oldContent.length - 1 - suffix] === newContent[newContent.length - 1 - suffix]) {
+      suffix++;
+    }
+
+    const components: OperationComponent[] = [];
+    const deletedLength = oldContent.length - prefix - suffix;
+    const insertedText = newContent.substring(prefix, newContent.length - suffix);
+    if (deletedLength > 0) {
+      components.push({ type: 'delete', length: deletedLength });
+    }
+    if (insertedText) {
+      components.push({ type: 'insert', text: insertedText });
+    }
+
+    if (components.length) {
+      webSocketService.sendComposite(prefix, components);
+    }
+  };
+
   const sendInsertOperation = (position: number, character: string): void => {
     webSocketService.sendOperation('insert', position, character);
   };
@@ -394,6 +422,7 @@ export const CollaborativeEditor: React.FC<CollaborativeEditorProps> = ({
         });
 
         webSocketService.setShadowContent(doc.content);
+        webSocketService.setRevision(doc.revision);
         localContentRef.current = doc.content;
 
         if (doc.activeUsers && Array.isArray(doc.activeUsers)) {
@@ -441,20 +470,43 @@ export const CollaborativeEditor: React.FC<CollaborativeEditorProps> = ({
     }
   };
 
-  const loadVersions = async () => {
+  const loadVersions = async (cursor: string | null = null) => {
     try {
-      const response = await apiService.getVersions(documentId);
+      const response = await apiService.getVersions(documentId, cursor);
       if (response.data.success && response.data.data) {
-        setVersions(response.data.data.map((v: DocumentVersion) => ({
+        const page: VersionPage = response.data.data;
+        const loaded = page.versions.map((v: DocumentVersion) => ({
           ...v,
           createdAt: new Date(v.createdAt)
-        })));
+        }));
+        setVersions(prev => cursor ? [...prev, ...loaded] : loaded);
+        setVersionsCursor(page.nextCursor || null);
       }
     } catch (err) {
       console.error('Failed to load versions:', err);
     }
   };
 
+  const toggleVersionPreview = async (versionId: string) => {
+    if (versionId in versionPreviews) {
+      setVersionPreviews(prev => {
+        const next = { ...prev };
+        delete next[versionId];
+        return next;
+      });
+      return;
+    }
+
+    try {
+      const response = await apiService.getVersion(documentId, versionId);
+      if (response.data.success && response.data.data) {
+        setVersionPreviews(prev => ({ ...prev, [versionId]: response.data.data.content || '' }));
+      }
+    } catch (err) {
+      console.error('Failed to load version content:', err);
+    }
+  };
+
   const startSyncCheck = () => {
     if (syncCheckIntervalRef.current) {
       clearInterval(syncCheckIntervalRef.current);
@@ -572,7 +624,8 @@ export const CollaborativeEditor: React.FC<CollaborativeEditorProps> = ({
 
       const response = await apiService.createVersion(document.id, request);
       if (response.data.success && response.data.data) {
-        setVersions(prev => [response.data.data, ...prev]);
+        const created: DocumentVersion = response.data.data;
+        setVersions(prev => [{ ...created, createdAt: new Date(created.createdAt) }, ...prev]);
         setVersionName('');
         setShowVersionDialog(false);
       }
@@ -769,7 +822,7 @@ export const CollaborativeEditor: React.FC<CollaborativeEditorProps> = ({
                   className="flex items-center space-x-2 px-3 py-2 rounded-lg bg-gray-100 hover:bg-gray-200 text-gray-700 transition-colors"
               >
                 <GitBranch className="w-4 h-4" />
-                <span className="text-sm">Версии ({versions.length})</span>
+                <span className="text-sm">Версии ({versions.length}{versionsCursor ? '+' : ''})</span>
               </button>
 
               <div className="flex items-center space-x-3">
@@ -968,15 +1021,34 @@ export const CollaborativeEditor: React.FC<CollaborativeEditorProps> = ({
                                   <Clock className="w-3 h-3" />
                                   <span>{version.createdAt.toLocaleString()}</span>
                                 </div>
+                                <div className="flex items-center justify-between">
+                                  <span>{version.size ?? version.contentLength ?? version.content?.length ?? 0} символов</span>
+                                  <button
+                                      onClick={() => toggleVersionPreview(version.id)}
+                                      className="text-blue-600 hover:underline"
+                                  >
+                                    {version.id in versionPreviews ? 'Скрыть' : 'Просмотр'}
+                                  </button>
+                                </div>
                               </div>
 
-                              <div className="mt-3 p-2 rounded text-xs max-h-20 overflow-y-auto bg-white text-gray-600">
-                                {version.content.substring(0, 200)}
-                                {version.content.length > 200 && '...'}
-                              </div>
+                              {version.id in versionPreviews && (
+                                  <div className="mt-3 p-2 rounded text-xs max-h-20 overflow-y-auto bg-white text-gray-600">
+                                    {versionPreviews[version.id].substring(0, 200)}
+                                    {versionPreviews[version.id].length > 200 && '...'}
+                                  </div>
+                              )}
                             </div>
                         ))
                     )}
+                    {versionsCursor && (
+                        <button
+                            onClick={() => loadVersions(versionsCursor)}
+                            className="w-full py-2 text-sm text-blue-600 hover:bg-gray-50 rounded-lg"
+                        >
+                          Загрузить еще
+                        </button>
+                    )}
                   </div>
                 </div>
             )}
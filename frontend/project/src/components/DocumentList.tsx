@@ -1,5 +1,5 @@
 import React, { useState, useEffect } from 'react';
-import { Document } from '../types';
+import { DocumentPage, DocumentSummary } from '../types';
 import { apiService } from '../services/ApiService';
 import { useAuth } from '../hooks/useAuth';
 import { 
@@ -19,7 +19,8 @@ interface DocumentListProps {
 
 export const DocumentList: React.FC<DocumentListProps> = ({ onSelectDocument }) => {
   const { user, logout } = useAuth();
-  const [documents, setDocuments] = useState<Document[]>([]);
+  const [documents, setDocuments] = useState<DocumentSummary[]>([]);
+  const [nextCursor, setNextCursor] = useState<string | null>(null);
   const [loading, setLoading] = useState(true);
   const [error, setError] = useState('');
   const [searchTerm, setSearchTerm] = useState('');
@@ -30,18 +31,19 @@ export const DocumentList: React.FC<DocumentListProps> = ({ onSelectDocument })
     loadDocuments();
   }, []);
 
-  const loadDocuments = async () => {
+  const loadDocuments = async (cursor: string | null = null) => {
     try {
-      setLoading(true);
-      const response = await apiService.getDocuments();
+      if (!cursor) setLoading(true);
+      const response = await apiService.getDocuments(cursor);
       if (response.data.success && response.data.data) {
-        setDocuments(
-          response.data.data.map((doc: Document) => ({
-            ...doc,
-            createdAt: new Date(doc.createdAt),
-            updatedAt: new Date(doc.updatedAt)
-          }))
-        );
+        const page: DocumentPage = response.data.data;
+        const loaded = page.documents.map((doc: DocumentSummary) => ({
+          ...doc,
+          createdAt: new Date(doc.createdAt),
+          updatedAt: new Date(doc.updatedAt)
+        }));
+        setDocuments(prev => cursor ? [...prev, ...loaded] : loaded);
+        setNextCursor(page.nextCursor || null);
       }
       setError('');
     } catch (err: any) {
@@ -60,9 +62,13 @@ export const DocumentList: React.FC<DocumentListProps> = ({ onSelectDocument })
         const newDoc = response.data.data;
         setDocuments([
           {
-            ...newDoc,
+            id: newDoc.id,
+            title: newDoc.title,
             createdAt: new Date(newDoc.createdAt),
-            updatedAt: new Date(newDoc.updatedAt)
+            updatedAt: new Date(newDoc.updatedAt),
+            size: newDoc.content?.length ?? 0,
+            versionCounter: newDoc.versionCounter,
+            snippet: newDoc.content
           },
           ...documents
         ]);
@@ -188,6 +194,11 @@ export const DocumentList: React.FC<DocumentListProps> = ({ onSelectDocument })
                         <Trash2 className="w-4 h-4" />
                       </button>
                     </div>
+                    {doc.snippet && (
+                      <p className="text-sm text-gray-600 mb-3 line-clamp-2">
+                        {doc.snippet}
+                      </p>
+                    )}
                     <div className="text-sm text-gray-500 space-y-1">
                       <div className="flex items-center space-x-1">
                         <Clock className="w-3.5 h-3.5" />
@@ -211,6 +222,9 @@ export const DocumentList: React.FC<DocumentListProps> = ({ onSelectDocument })
                           day: 'numeric'
                         }).format(doc.createdAt)}
                       </div>
+                      <div className="text-xs text-gray-500">
+                        {doc.size} символов
+                      </div>
                     </div>
                   </div>
                 </div>
@@ -224,6 +238,16 @@ export const DocumentList: React.FC<DocumentListProps> = ({ onSelectDocument })
                 </p>
               </div>
             )}
+            {nextCursor && (
+              <div className="col-span-full flex justify-center">
+                <button
+                  onClick={() => loadDocuments(nextCursor)}
+                  className="px-4 py-2 bg-gray-100 hover:bg-gray-200 text-gray-700 rounded-lg transition-colors"
+                >
+                  Загрузить еще
+                </button>
+              </div>
+            )}
           </div>
         )}
       </div>
@@ -15,6 +15,7 @@ export const API_CONFIG = {
       GET: (id: string) => `/documents/${id}`,
       CREATE: '/documents',
       UPDATE_CONTENT: (id: string) => `/documents/${id}/content`,
+      CONTENT_RANGE: (id: string) => `/documents/${id}/content`,
       DELETE: (id: string) => `/documents/${id}`,
       ACTIVE_USERS: (id: string) => `/documents/${id}/active-users`,
       HEARTBEAT: (id: string) => `/documents/${id}/heartbeat`,
@@ -24,6 +25,7 @@ export const API_CONFIG = {
     },
     VERSIONS: {
       LIST: (documentId: string) => `/documents/${documentId}/versions`,
+      GET: (documentId: string, versionId: string) => `/documents/${documentId}/versions/${versionId}`,
       CREATE: (documentId: string) => `/documents/${documentId}/versions`,
       RESTORE: (documentId: string, versionId: string) => `/documents/${documentId}/versions/${versionId}/restore`
     }
@@ -123,8 +123,10 @@ class ApiService {
     return this.api.post(API_CONFIG.ENDPOINTS.AUTH.REFRESH, { refreshToken });
   }
 
-  async getDocuments(): Promise<AxiosResponse<any>> {
-    return this.api.get(API_CONFIG.ENDPOINTS.DOCUMENTS.LIST);
+  async getDocuments(cursor?: string | null, limit = 50): Promise<AxiosResponse<any>> {
+    return this.api.get(API_CONFIG.ENDPOINTS.DOCUMENTS.LIST, {
+      params: { cursor: cursor || undefined, limit }
+    });
   }
 
   async getDocument(id: string): Promise<AxiosResponse<any>> {
@@ -143,8 +145,20 @@ class ApiService {
     return this.api.delete(API_CONFIG.ENDPOINTS.DOCUMENTS.DELETE(id));
   }
 
-  async getVersions(documentId: string): Promise<AxiosResponse<any>> {
-    return this.api.get(API_CONFIG.ENDPOINTS.VERSIONS.LIST(documentId));
+  async getContentRange(documentId: string, offset: number, length: number): Promise<AxiosResponse<any>> {
+    return this.api.get(API_CONFIG.ENDPOINTS.DOCUMENTS.CONTENT_RANGE(documentId), {
+      params: { offset, length }
+    });
+  }
+
+  async getVersions(documentId: string, cursor?: string | null, limit = 20): Promise<AxiosResponse<any>> {
+    return this.api.get(API_CONFIG.ENDPOINTS.VERSIONS.LIST(documentId), {
+      params: { cursor: cursor || undefined, limit }
+    });
+  }
+
+  async getVersion(documentId: string, versionId: string): Promise<AxiosResponse<any>> {
+    return this.api.get(API_CONFIG.ENDPOINTS.VERSIONS.GET(documentId, versionId));
   }
 
   async createVersion(documentId: string, request: SaveVersionRequest): Promise<AxiosResponse<any>> {
@@ -0,0 +1,84 @@
+import { EditOperation } from '../types';
+
+/**
+ * Клиентская копия серверного OperationTransformer: те же правила для вставки, удаления диапазона и замены.
+ * transform(left, right, leftWinsTie) возвращает left, приведенные к контексту после right, и right,
+ * приведенные к контексту после left. На клиенте входящие операции сервера выигрывают при вставке
+ * в одну позицию, как и на сервере, где раньше примененная операция остается первой.
+ */
+export function transform(left: EditOperation[], right: EditOperation[],
+                          leftWinsTie: boolean): [EditOperation[], EditOperation[]] {
+  if (!left.length || !right.length) {
+    return [left, right];
+  }
+  if (left.length === 1 && right.length === 1) {
+    return [transformOne(left[0], right[0], leftWinsTie), transformOne(right[0], left[0], !leftWinsTie)];
+  }
+  if (left.length > 1) {
+    const [headLeft, headRight] = transform(left.slice(0, 1), right, leftWinsTie);
+    const [tailLeft, tailRight] = transform(left.slice(1), headRight, leftWinsTie);
+    return [[...headLeft, ...tailLeft], tailRight];
+  }
+  const [headLeft, headRight] = transform(left, right.slice(0, 1), leftWinsTie);
+  const [tailLeft, tailRight] = transform(headLeft, right.slice(1), leftWinsTie);
+  return [tailLeft, [...headRight, ...tailRight]];
+}
+
+export function deletedLength(operation: EditOperation): number {
+  return operation.length && operation.length > 0 ? operation.length : 1;
+}
+
+function transformOne(operation: EditOperation, against: EditOperation, winsTie: boolean): EditOperation[] {
+  if (operation.type === 'replace') {
+    return [operation];
+  }
+  if (against.type === 'replace') {
+    return [];
+  }
+
+  const position = operation.position;
+  const otherPosition = against.position;
+  const insert = operation.type === 'insert';
+
+  if (against.type === 'insert') {
+    const inserted = against.character ? against.character.length : 0;
+    if (insert) {
+      const shifted = otherPosition < position || (otherPosition === position && !winsTie);
+      return [shifted ? { ...operation, position: position + inserted } : operation];
+    }
+    const length = deletedLength(operation);
+    if (otherPosition <= position) {
+      return [{ ...operation, position: position + inserted }];
+    }
+    if (otherPosition >= position + length) {
+      return [operation];
+    }
+    const before = otherPosition - position;
+    return [
+      { ...operation, position, length: before },
+      { ...operation, position: position + inserted, length: length - before }
+    ];
+  }
+
+  if (against.type === 'delete') {
+    const removed = deletedLength(against);
+    const otherEnd = otherPosition + removed;
+    if (insert) {
+      if (position <= otherPosition) {
+        return [operation];
+      }
+      return [{ ...operation, position: position >= otherEnd ? position - removed : otherPosition }];
+    }
+
+    const length = deletedLength(operation);
+    const end = position + length;
+    const overlap = Math.max(0, Math.min(end, otherEnd) - Math.max(position, otherPosition));
+    const start = position < otherPosition ? position : (position >= otherEnd ? position - removed : otherPosition);
+    if (length - overlap === 0) {
+      return [];
+    }
+    return [{ ...operation, position: start, length: length - overlap }];
+  }
+
+  return [operation];
+}
@@ -1,8 +1,9 @@
 import { Client, IFrame } from '@stomp/stompjs';
 import SockJS from 'sockjs-client';
 import { API_CONFIG } from '../config/api';
-import { WebSocketMessage, ContentUpdateMessage, DocumentVersion, User, EditOperation, OperationType } from '../types';
+import { WebSocketMessage, ContentUpdateMessage, DocumentVersion, User, EditOperation, OperationType, OperationComponent } from '../types';
 import { apiService } from './ApiService';
+import { transform } from './OperationTransformer';
 
 class WebSocketService {
   private static instance: WebSocketService;
@@ -13,6 +14,7 @@ class WebSocketService {
   private userColor: string | null = null;
   private messageHandlers: Map<string, (message: any) => void> = new Map();
   private lastKnownUpdate: Date = new Date();
+  private revision: number | null = null;
   private clientId: string = Math.random().toString(36).substring(2, 15);
   private operationTimeoutRef: NodeJS.Timeout | null = null;
   private operationDebounceTime = 50;
@@ -20,7 +22,14 @@ class WebSocketService {
   private connectionPromise: Promise<void> | null = null;
   private reconnectAttempts: number = 0;
   private maxReconnectAttempts: number = 5;
+  // Локальные операции: sentOperations отправлены одним пакетом и ждут подтверждения,
+  // pendingOperations набраны после отправки. Входящие операции приводятся к контексту обоих буферов.
+  private sentOperations: EditOperation[] = [];
   private pendingOperations: EditOperation[] = [];
+  private awaitingAck: boolean = false;
+  private acknowledgedRevision: number | null = null;
+  private resyncRequested: boolean = false;
+  private deferredOperations: EditOperation[] = [];
   
   private shadowContent: string = '';
 
@@ -210,6 +219,9 @@ class WebSocketService {
       clearTimeout(this.operationTimeoutRef);
       this.operationTimeoutRef = null;
     }
+    this.resetLocalOperations();
+    this.resyncRequested = false;
+    this.deferredOperations = [];
     
     console.log('WebSocket успешно отключен');
   }
@@ -221,7 +233,12 @@ class WebSocketService {
       const data = JSON.parse(message.body);
       console.log('Received document update:', data);
 
-      const isOwnUpdate = data.clientId === this.clientId;
+      if (data.type === 'VERSION_CONFLICT') {
+        if (data.targetClientId === this.clientId) {
+          this.requestResync();
+        }
+        return;
+      }
 
       if (data.updatedAt) {
         console.log('Received server date string:', data.updatedAt);
@@ -233,38 +250,20 @@ class WebSocketService {
           'formatted:', this.formatDateForServer(this.lastKnownUpdate));
       }
 
-      if (data.type === "OPERATION_UPDATE") {
-        console.log('Received operation update:', data.operation);
-        
-        if (isOwnUpdate) {
-          console.log('Ignoring own operation update from server (already applied locally)');
-          this.notifyHandler('OPERATION_UPDATE', {
-            operation: data.operation,
-            content: this.shadowContent,
-            userId: data.updatedBy,
-            timestamp: data.updatedAt ? 
-              (typeof data.updatedAt === 'string' ? this.parseDateFromServer(data.updatedAt) : data.updatedAt) : 
-              new Date(),
-            clientId: data.clientId
-          });
-        } else {
-          console.log('Applying remote operation from user:', data.updatedBy);
-          
-          this.applyOperation(data.operation);
-          
-          this.notifyHandler('OPERATION_UPDATE', {
-            operation: data.operation,
-            content: this.shadowContent,
-            userId: data.updatedBy,
-            timestamp: data.updatedAt ? 
-              (typeof data.updatedAt === 'string' ? this.parseDateFromServer(data.updatedAt) : data.updatedAt) : 
-              new Date(),
-            clientId: data.clientId
-          });
+      if (data.type === 'OPERATION_BATCH') {
+        const operations: EditOperation[] = Array.isArray(data.operations) ? data.operations : [];
+        console.log(`Received batch of ${operations.length} operations up to revision ${data.revision}`);
+        if (this.resyncRequested) {
+          this.deferredOperations.push(...operations);
+          return;
         }
+        this.receiveOperations(operations);
       } else if (data.content !== undefined) {
         console.log('Received full document update');
         
+        this.resetLocalOperations();
+        this.updateRevision(data.revision);
+        
         this.shadowContent = data.content;
         
         this.notifyHandler('CONTENT_UPDATE', {
@@ -283,18 +282,37 @@ class WebSocketService {
     this.client.subscribe(`/topic/documents/${this.documentId}/conflicts`, (message) => {
       const data = JSON.parse(message.body);
       console.log('Received version conflict notification:', data);
+      console.log('Conflict is resolved through a resync request from the updates channel');
+    });
 
-      if (data.updatedAt) {
-        this.lastKnownUpdate = typeof data.updatedAt === 'string' ? 
-          this.parseDateFromServer(data.updatedAt) : data.updatedAt;
-        console.log('Updated lastKnownUpdate from conflict notification to:', this.lastKnownUpdate);
+    this.client.subscribe('/user/queue/document-resync', (message) => {
+      const result = JSON.parse(message.body);
+      console.log('Document resync result:', result);
+      if (result.clientId && result.clientId !== this.clientId) {
+        return;
+      }
+      this.resyncRequested = false;
+      const deferred = this.deferredOperations;
+      this.deferredOperations = [];
+      if (result.status !== 'success') {
+        return;
       }
 
-      if (data.conflictThreshold) {
-        console.log(`Note: Server is configured to only report conflicts when the time difference exceeds ${data.conflictThreshold} seconds`);
+      this.resetLocalOperations();
+      this.shadowContent = result.content;
+      this.setRevision(result.revision);
+      if (result.updatedAt) {
+        this.lastKnownUpdate = typeof result.updatedAt === 'string' ?
+          this.parseDateFromServer(result.updatedAt) : result.updatedAt;
       }
 
-      console.log('Ignoring content update from conflict notification');
+      this.notifyHandler('CONTENT_UPDATE', {
+        content: result.content,
+        timestamp: this.lastKnownUpdate,
+        clientId: result.clientId
+      });
+      // Операции, пришедшие раньше ответа, но после его ревизии
+      this.receiveOperations(deferred);
     });
 
     this.client.subscribe(`/topic/documents/${this.documentId}/user-joined`, (message) => {
@@ -312,17 +330,28 @@ class WebSocketService {
     this.client.subscribe('/user/queue/document-update-result', (message) => {
       const result = JSON.parse(message.body);
       console.log('Document update result:', result);
+      if (result.clientId && result.clientId !== this.clientId) {
+        return;
+      }
       if (result.status === 'success' && result.updatedAt) {
         this.lastKnownUpdate = typeof result.updatedAt === 'string' ? 
           this.parseDateFromServer(result.updatedAt) : result.updatedAt;
         console.log('Updated lastKnownUpdate from update result to:', this.lastKnownUpdate);
       }
+      if (result.status !== 'success' || result.resyncRequired) {
+        this.requestResync();
+        return;
+      }
+      this.acknowledgedRevision = typeof result.revision === 'number' ? result.revision : null;
+      this.completeSentIfAcknowledged();
     });
 
     this.client.subscribe(`/topic/documents/${this.documentId}/restore`, (message) => {
       const data = JSON.parse(message.body);
       console.log('Document restored:', data);
 
+      this.updateRevision(data.revision);
+
       if (data.updatedAt) {
         this.lastKnownUpdate = typeof data.updatedAt === 'string' ? 
           this.parseDateFromServer(data.updatedAt) : data.updatedAt;
@@ -368,6 +397,99 @@ class WebSocketService {
     }
   }
   
+  private receiveOperations(operations: EditOperation[]): void {
+    let lastApplied: EditOperation | null = null;
+    for (let i = 0; i < operations.length; i++) {
+      const operation = operations[i];
+      if (typeof operation.revision === 'number' && this.revision !== null) {
+        if (operation.revision <= this.revision) {
+          continue;
+        }
+        if (operation.revision > this.revision + 1) {
+          console.warn(`Missed operations between revisions ${this.revision} and ${operation.revision}, resyncing`);
+          this.requestResync();
+          this.deferredOperations.push(...operations.slice(i));
+          break;
+        }
+      }
+      this.updateRevision(operation.revision);
+      if (operation.clientId === this.clientId) {
+        // Свой пакет уже в истории сервера: следующие чужие операции учитывают его
+        this.sentOperations = [];
+      } else {
+        this.applyRemoteOperation(operation);
+      }
+      lastApplied = operation;
+    }
+    this.completeSentIfAcknowledged();
+
+    if (lastApplied) {
+      this.notifyHandler('OPERATION_UPDATE', {
+        operation: lastApplied,
+        content: this.shadowContent,
+        userId: lastApplied.userId,
+        timestamp: this.lastKnownUpdate,
+        clientId: lastApplied.clientId
+      });
+    }
+  }
+
+  /**
+   * Чужая операция создана без учета локальных буферов: она приводится к контексту отправленных и
+   * ожидающих операций, а буферы - к контексту после нее, чтобы их позиции оставались верными на сервере.
+   */
+  private applyRemoteOperation(operation: EditOperation): void {
+    const [afterSent, sent] = transform([operation], this.sentOperations, true);
+    const [transformed, pending] = transform(afterSent, this.pendingOperations, true);
+    this.sentOperations = sent;
+    this.pendingOperations = pending;
+    transformed.forEach(remote => this.applyOperation(remote));
+  }
+
+  /**
+   * Отправленный пакет подтвержден, когда пришел ответ сервера и поток операций дошел до его ревизии:
+   * только тогда baseRevision следующего пакета включает и свои, и все предшествующие чужие операции.
+   */
+  private completeSentIfAcknowledged(): void {
+    if (!this.awaitingAck || this.acknowledgedRevision === null || this.revision === null
+      || this.revision < this.acknowledgedRevision) {
+      return;
+    }
+    this.sentOperations = [];
+    this.awaitingAck = false;
+    this.acknowledgedRevision = null;
+    if (this.pendingOperations.length) {
+      this.flushPendingOperations();
+    }
+  }
+
+  private resetLocalOperations(): void {
+    this.sentOperations = [];
+    this.pendingOperations = [];
+    this.awaitingAck = false;
+    this.acknowledgedRevision = null;
+  }
+
+  private expandOperation(operation: EditOperation): EditOperation[] {
+    if (operation.type !== 'compose') {
+      return [operation];
+    }
+    const parts: EditOperation[] = [];
+    let cursor = operation.position;
+    for (const component of operation.components || []) {
+      if (component.type === 'retain') {
+        cursor += component.length || 0;
+      } else if (component.type === 'insert' && component.text) {
+        parts.push({ ...operation, type: 'insert', position: cursor, character: component.text, components: undefined });
+        cursor += component.text.length;
+      } else if (component.type === 'delete' && component.length) {
+        parts.push({ ...operation, type: 'delete', position: cursor, character: '', length: component.length,
+          components: undefined });
+      }
+    }
+    return parts;
+  }
+  
   private applyOperation(operation: EditOperation): void {
     if (!operation) return;
     
@@ -389,17 +511,35 @@ class WebSocketService {
           
         console.log(`After insert: shadow content length = ${this.shadowContent.length}`);
       } else if (operation.type === 'delete') {
-        const safePosition = Math.min(Math.max(0, operation.position), this.shadowContent.length - 1);
+        const length = operation.length && operation.length > 0 ? operation.length : 1;
         
-        if (operation.position >= 0 && operation.position < this.shadowContent.length) {
+        if (operation.position >= 0 && operation.position + length <= this.shadowContent.length) {
           this.shadowContent = 
-            this.shadowContent.substring(0, safePosition) + 
-            this.shadowContent.substring(safePosition + 1);
+            this.shadowContent.substring(0, operation.position) + 
+            this.shadowContent.substring(operation.position + length);
             
           console.log(`After delete: shadow content length = ${this.shadowContent.length}`);
         } else {
-          console.warn(`Skipping invalid delete operation at position ${operation.position} (content length: ${this.shadowContent.length})`);
+          console.warn(`Skipping invalid delete operation at position ${operation.position}, length ${length} (content length: ${this.shadowContent.length})`);
+        }
+      } else if (operation.type === 'compose') {
+        let cursor = operation.position;
+        for (const component of operation.components || []) {
+          if (component.type === 'retain') {
+            cursor += component.length || 0;
+          } else if (component.type === 'insert' && component.text) {
+            this.shadowContent =
+              this.shadowContent.substring(0, cursor) +
+              component.text +
+              this.shadowContent.substring(cursor);
+            cursor += component.text.length;
+          } else if (component.type === 'delete' && component.length) {
+            this.shadowContent =
+              this.shadowContent.substring(0, cursor) +
+              this.shadowContent.substring(cursor + component.length);
+          }
         }
+        console.log(`After compose: shadow content length = ${this.shadowContent.length}`);
       } else if (operation.type === 'replace') {
         console.log('Applying replace operation, setting shadow content to new value');
         this.shadowContent = operation.character;
@@ -410,7 +550,12 @@ class WebSocketService {
     }
   }
   
-  sendOperation(type: OperationType, position: number, character: string = ''): void {
+  sendComposite(position: number, components: OperationComponent[]): void {
+    this.sendOperation('compose', position, '', undefined, components);
+  }
+
+  sendOperation(type: OperationType, position: number, character: string = '', length?: number,
+                components?: OperationComponent[]): void {
     if (!this.client || !this.documentId || !this.isConnected()) {
       console.warn('WebSocket not connected, can\'t send operation');
       return;
@@ -421,13 +566,16 @@ class WebSocketService {
       position,
       type,
       character,
+      length,
+      components,
       clientId: this.clientId,
       clientTimestamp: Date.now()
     };
     
-    this.applyOperation(operation);
-    
-    this.pendingOperations.push(operation);
+    for (const part of this.expandOperation(operation)) {
+      this.applyOperation(part);
+      this.pendingOperations.push(part);
+    }
     
     if (this.operationTimeoutRef) {
       clearTimeout(this.operationTimeoutRef);
@@ -439,7 +587,7 @@ class WebSocketService {
   }
   
   private flushPendingOperations(): void {
-    if (!this.pendingOperations.length) return;
+    if (!this.pendingOperations.length || this.awaitingAck) return;
     
     try {
       const formattedDate = this.formatDateForServer(this.lastKnownUpdate);
@@ -451,20 +599,41 @@ class WebSocketService {
       const batchRequest = {
         operations: [...this.pendingOperations],
         lastKnownUpdate: formattedDate,
+        baseRevision: this.revision,
         clientId: this.clientId
       };
       
       console.log('Sending with lastKnownUpdate:', batchRequest.lastKnownUpdate);
       
+      this.sentOperations = this.pendingOperations;
+      this.pendingOperations = [];
+      this.awaitingAck = true;
+      this.acknowledgedRevision = null;
       this.sendMessage(`/app/documents/${this.documentId}/batch-operations`, batchRequest);
       
-      console.log(`Sent batch of ${this.pendingOperations.length} operations`);
-      this.pendingOperations = [];
+      console.log(`Sent batch of ${this.sentOperations.length} operations`);
     } catch (error) {
       console.error('Error sending operations:', error);
     }
   }
   
+  setRevision(revision: number | null | undefined): void {
+    this.revision = revision ?? null;
+  }
+
+  requestResync(): void {
+    if (!this.documentId) return;
+    console.log('Requesting full document content from server');
+    this.resyncRequested = true;
+    this.sendMessage(`/app/documents/${this.documentId}/resync`, { clientId: this.clientId });
+  }
+
+  private updateRevision(revision: number | null | undefined): void {
+    if (typeof revision === 'number' && (this.revision === null || revision > this.revision)) {
+      this.revision = revision;
+    }
+  }
+
   private formatDateForServer(date: Date): string {
     if (!date) return '';
     
@@ -505,15 +674,10 @@ class WebSocketService {
       clientTimestamp: Date.now()
     };
     
-    const updateRequest = {
-      operations: [replaceOperation],
-      lastKnownUpdate: this.formatDateForServer(this.lastKnownUpdate),
-      clientId: this.clientId
-    };
-    
     console.log('Sending bulk content update as replace operation');
     
-    this.sendMessage(`/app/documents/${this.documentId}/update`, updateRequest);
+    this.pendingOperations.push(replaceOperation);
+    this.flushPendingOperations();
   }
 
   private sendMessage(destination: string, body: any): void {
@@ -574,16 +738,6 @@ class WebSocketService {
       console.log('User left event received:', data);
     });
     
-    this.messageHandlers.set('VERSION_CONFLICT', (data) => {
-      console.log('Version conflict detected:', data);
-      try {
-        if (data && data.content) {
-          handler({ content: data.content });
-        }
-      } catch (error) {
-        console.error('Error handling version conflict:', error);
-      }
-    });
   }
 
   isConnected(): boolean {
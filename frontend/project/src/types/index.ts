@@ -40,16 +40,49 @@ export interface Document {
   versions: DocumentVersion[];
   activeUsers?: ActiveUserDto[];
   versionCounter?: number;
+  revision?: number;
+}
+
+export interface DocumentSummary {
+  id: string;
+  title: string;
+  createdAt: Date;
+  updatedAt: Date;
+  size: number;
+  versionCounter?: number;
+  snippet?: string | null;
+}
+
+export interface DocumentPage {
+  documents: DocumentSummary[];
+  nextCursor?: string | null;
+}
+
+export interface ContentRange {
+  documentId: string;
+  offset: number;
+  length: number;
+  totalLength: number;
+  revision: number;
+  updatedAt: string;
+  text: string;
 }
 
 export interface DocumentVersion {
   id: string;
   versionName: string;
-  content: string;
+  content?: string;
   createdBy: string;
   createdAt: Date;
   authorName: string;
   createdByUsername?: string;
+  size?: number;
+  contentLength?: number;
+}
+
+export interface VersionPage {
+  versions: DocumentVersion[];
+  nextCursor?: string | null;
 }
 
 export interface CursorPosition {
@@ -87,22 +120,32 @@ export interface CursorUpdateMessage {
   color?: string;
 }
 
-export type OperationType = 'insert' | 'delete' | 'replace';
+export type OperationType = 'insert' | 'delete' | 'replace' | 'compose';
+
+export interface OperationComponent {
+  type: 'retain' | 'insert' | 'delete';
+  length?: number;
+  text?: string;
+}
 
 export interface EditOperation {
   documentId: string;
   position: number;
   type: OperationType;
   character: string;
+  length?: number;
+  components?: OperationComponent[];
   clientId: string;
   clientTimestamp: number;
   serverTimestamp?: number;
   userId?: string;
+  revision?: number;
 }
 
 export interface DocumentUpdateRequest {
   operations: EditOperation[];
   lastKnownUpdate: string | null;
+  baseRevision?: number | null;
   clientId: string;
 }
 
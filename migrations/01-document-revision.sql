@@ -0,0 +1 @@
+ALTER TABLE documents ADD COLUMN revision BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1 @@
+ALTER TABLE documents ADD COLUMN crdt_state BYTEA;
@@ -0,0 +1,9 @@
+CREATE TABLE document_operations
+(
+    document_id UUID      NOT NULL REFERENCES documents (id) ON DELETE CASCADE,
+    revision    BIGINT    NOT NULL,
+    user_id     UUID,
+    payload     JSONB     NOT NULL,
+    created_at  TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (document_id, revision)
+);
@@ -0,0 +1,12 @@
+ALTER TABLE document_versions ADD COLUMN sequence INTEGER;
+ALTER TABLE document_versions ADD COLUMN delta BYTEA;
+ALTER TABLE document_versions ALTER COLUMN content DROP NOT NULL;
+
+UPDATE document_versions v
+SET sequence = numbered.sequence
+FROM (SELECT id, ROW_NUMBER() OVER (PARTITION BY document_id ORDER BY created_at, id) AS sequence
+      FROM document_versions) numbered
+WHERE v.id = numbered.id;
+
+ALTER TABLE document_versions ALTER COLUMN sequence SET NOT NULL;
+CREATE UNIQUE INDEX document_versions_document_sequence_idx ON document_versions (document_id, sequence);
@@ -0,0 +1,7 @@
+ALTER TABLE document_versions ADD COLUMN content_length INTEGER;
+
+UPDATE document_versions SET content_length = COALESCE(length(content), 0);
+
+ALTER TABLE document_versions ALTER COLUMN content_length SET DEFAULT 0;
+ALTER TABLE document_versions ALTER COLUMN content_length SET NOT NULL;
+CREATE INDEX document_versions_document_created_idx ON document_versions (document_id, created_at DESC, sequence DESC);
@@ -0,0 +1,2 @@
+ALTER TABLE documents ALTER COLUMN content TYPE BYTEA USING convert_to(content, 'UTF8');
+ALTER TABLE document_versions ALTER COLUMN content TYPE BYTEA USING convert_to(content, 'UTF8');
@@ -0,0 +1,13 @@
+ALTER TABLE documents ADD COLUMN content_length INTEGER NOT NULL DEFAULT 0;
+ALTER TABLE documents ADD COLUMN snippet VARCHAR(200);
+
+-- Сжатые значения (первый байт 0) получат размер и фрагмент при следующей записи содержимого
+UPDATE documents
+SET content_length = length(convert_from(content, 'UTF8')),
+    snippet = left(convert_from(content, 'UTF8'), 200)
+WHERE length(content) = 0 OR get_byte(content, 0) <> 0;
+
+UPDATE documents SET updated_at = COALESCE(created_at, CURRENT_TIMESTAMP) WHERE updated_at IS NULL;
+ALTER TABLE documents ALTER COLUMN updated_at SET NOT NULL;
+
+CREATE INDEX documents_owner_updated_idx ON documents (created_by, updated_at, id);
@@ -0,0 +1,11 @@
+ALTER TABLE documents ADD COLUMN lock_version BIGINT NOT NULL DEFAULT 0;
+UPDATE documents SET version_counter = 0 WHERE version_counter IS NULL;
+
+UPDATE document_versions v
+SET version_name = left(v.version_name, 88) || ' (' || v.sequence || ')'
+WHERE EXISTS (SELECT 1 FROM document_versions o
+              WHERE o.document_id = v.document_id
+                AND o.version_name = v.version_name
+                AND o.sequence < v.sequence);
+
+CREATE UNIQUE INDEX document_versions_document_name_idx ON document_versions (document_id, version_name);
@@ -0,0 +1,2 @@
+CREATE INDEX user_sessions_expires_at_idx ON user_sessions (expires_at);
+CREATE INDEX user_sessions_user_id_idx ON user_sessions (user_id);
@@ -0,0 +1,88 @@
+package dsr.practice.docseditor.security;
+
+import dsr.practice.docseditor.config.AppProperties;
+import dsr.practice.docseditor.model.User;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Проверка токенов в секунду: прежняя схема (ключ и парсер на каждый вызов) против
+ * {@link JwtTokenProvider} с парсером, выбирающим ключ по kid, - без кеша claims и с ним.
+ * Запуск: ./gradlew jmh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class JwtVerificationBenchmark {
+    private static final String SECRET = "d3587b318c4720a6cc3eed4c7cf9f3819206ef76893fd025";
+    private static final int TOKENS = 1024;
+
+    private JwtTokenProvider provider;
+    private JwtTokenProvider uncachedProvider;
+    private String[] tokens;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        provider = new JwtTokenProvider(appProperties(10_000), null, null);
+        // Кеш на одну запись при переборе 1024 разных токенов: каждая проверка проходит через парсер.
+        uncachedProvider = new JwtTokenProvider(appProperties(1), null, null);
+
+        tokens = new String[TOKENS];
+        for (int i = 0; i < TOKENS; i++) {
+            tokens[i] = provider.generateAccessToken(User.builder()
+                    .id(UUID.randomUUID())
+                    .username("benchmark-" + i)
+                    .email("benchmark-" + i + "@example.com")
+                    .build());
+        }
+    }
+
+    @Benchmark
+    public Claims parserPerCall() {
+        return Jwts.parserBuilder()
+                .setSigningKey(Keys.hmacShaKeyFor(SECRET.getBytes()))
+                .build()
+                .parseClaimsJws(nextToken())
+                .getBody();
+    }
+
+    @Benchmark
+    public boolean validateToken() {
+        return uncachedProvider.validateToken(nextToken());
+    }
+
+    @Benchmark
+    public String extractUserName() {
+        return uncachedProvider.extractUserName(nextToken());
+    }
+
+    @Benchmark
+    public boolean cachedValidateToken() {
+        return provider.validateToken(tokens[0]);
+    }
+
+    private String nextToken() {
+        next = (next + 1) % TOKENS;
+        return tokens[next];
+    }
+
+    private static AppProperties appProperties(long claimsCacheSize) {
+        AppProperties appProperties = new AppProperties();
+        appProperties.getJwt().setSecret(SECRET);
+        appProperties.getJwt().setAccessTokenExpiresMs(TimeUnit.HOURS.toMillis(1));
+        appProperties.getJwt().setClaimsCacheSize(claimsCacheSize);
+        return appProperties;
+    }
+}
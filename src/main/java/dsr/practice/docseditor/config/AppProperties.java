@@ -4,16 +4,86 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.HashMap;
+import java.util.Map;
+
 @Data
 @Configuration
 @ConfigurationProperties(prefix = "app")
 public class AppProperties {
     private Jwt jwt =  new Jwt();
+    private Collaboration collaboration = new Collaboration();
+    private Versions versions = new Versions();
+    private Storage storage = new Storage();
+    private Deletion deletion = new Deletion();
+    private DocumentCache documentCache = new DocumentCache();
+    private Sessions sessions = new Sessions();
 
     @Data
     public static class Jwt {
         private String secret;
         private long refreshTokenExpiresMs;
         private long accessTokenExpiresMs;
+        private long claimsCacheSize = 10000;
+        private String keyId = "default";
+        private Map<String, String> verificationKeys = new HashMap<>();
+    }
+
+    @Data
+    public static class Collaboration {
+        private boolean writeBehind = true;
+        private long flushIntervalMs = 2000;
+        private int flushOperationThreshold = 500;
+        private long flushCheckIntervalMs = 200;
+        private int historySize = 1000;
+        private Engine engine = Engine.OT;
+        private long crdtClientTimeoutMs = 60000;
+        private long crdtTombstoneGraceMs = 30000;
+        private long snapshotIntervalMs = 30000;
+        private int snapshotOperationThreshold = 1000;
+        private long broadcastWindowMs = 20;
+    }
+
+    @Data
+    public static class Versions {
+        private int keyframeInterval = 10;
+    }
+
+    @Data
+    public static class Storage {
+        private boolean compressionEnabled = true;
+        private int compressionThreshold = 1024;
+        private int compressionLevel = 1;
+    }
+
+    @Data
+    public static class Deletion {
+        private long purgeIntervalMs = 60000;
+        private int purgeBatchSize = 1000;
+        private int purgeDocumentsPerRun = 20;
+    }
+
+    @Data
+    public static class DocumentCache {
+        private long maximumContentChars = 50_000_000;
+        private long expireAfterAccessMs = 600000;
+    }
+
+    @Data
+    public static class Sessions {
+        private long purgeIntervalMs = 3600000;
+        private int purgeBatchSize = 1000;
+        private int purgeMaxBatches = 100;
+        private SessionStore store = SessionStore.JPA;
+    }
+
+    public enum SessionStore {
+        JPA,
+        REDIS
+    }
+
+    public enum Engine {
+        OT,
+        CRDT
     }
 }
@@ -104,6 +104,6 @@ public class SecurityConfig {
 
     @Bean
     public JwtAuthenticationFilter jwtAuthenticationFilter() {
-        return new JwtAuthenticationFilter(jwtTokenProvider, jwtUserDetailsService);
+        return new JwtAuthenticationFilter(jwtTokenProvider);
     }
 }
@@ -59,6 +59,7 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                .setHeartbeatValue(new long[] {10000, 10000});
         registry.setApplicationDestinationPrefixes("/app");
         registry.setUserDestinationPrefix("/user");
+        registry.setPreservePublishOrder(true);
     }
 
     @Override
@@ -5,6 +5,7 @@ import dsr.practice.docseditor.dto.LoginRequest;
 import dsr.practice.docseditor.dto.RefreshTokenRequest;
 import dsr.practice.docseditor.dto.RegisterRequest;
 import dsr.practice.docseditor.service.UserService;
+import dsr.practice.docseditor.utils.SecurityUtils;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
@@ -24,6 +25,7 @@ import org.springframework.web.bind.annotation.RestController;
 public class AuthController {
     private final UserService userService;
     private final AuthenticationManager authenticationManager;
+    private final SecurityUtils securityUtils;
 
     @PostMapping("register")
     public ResponseEntity<AuthResponse> registerUser(@RequestBody RegisterRequest registerRequest,
@@ -80,4 +82,14 @@ public class AuthController {
 
         return ResponseEntity.ok(authResponse);
     }
+
+    @PostMapping("logout-all")
+    public ResponseEntity<Void> logoutAll() {
+        return securityUtils.getCurrentUserId()
+                .map(userId -> {
+                    userService.logoutAll(userId);
+                    return ResponseEntity.noContent().<Void>build();
+                })
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.UNAUTHORIZED).build());
+    }
 }
@@ -5,13 +5,16 @@ import dsr.practice.docseditor.dto.DocumentUpdateRequest;
 import dsr.practice.docseditor.dto.EditOperation;
 import dsr.practice.docseditor.model.Document;
 import dsr.practice.docseditor.service.CollaborationService;
+import dsr.practice.docseditor.service.DocumentSessionService;
 import dsr.practice.docseditor.utils.SecurityUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.MessageExceptionHandler;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.messaging.simp.annotation.SendToUser;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -36,6 +39,7 @@ public class CollaborationWebSocketController {
     @SendToUser("/queue/document-connection")
     @PreAuthorize("isAuthenticated()")
     public Map<String, Object> connectToDocument(@DestinationVariable UUID documentId,
+                                  @Header(SimpMessageHeaderAccessor.SESSION_ID_HEADER) String connectionId,
                                   Principal principal) {
         try {
             log.debug("Обработка запроса на подключение к документу: {}, пользователь: {}", 
@@ -44,7 +48,7 @@ public class CollaborationWebSocketController {
             UUID userId = securityUtils.getCurrentUserIdOrThrow();
             log.debug("Получен ID пользователя: {}", userId);
             
-            boolean isNewConnection = collaborationService.connectUserToDocument(documentId, userId);
+            boolean isNewConnection = collaborationService.connectUserToDocument(documentId, userId, connectionId);
             
             List<ActiveUserDto> allActiveUsers = collaborationService.getActiveUsersList(documentId);
 
@@ -76,6 +80,7 @@ public class CollaborationWebSocketController {
     @MessageMapping("/documents/{documentId}/disconnect")
     @PreAuthorize("isAuthenticated()")
     public void disconnectFromDocument(@DestinationVariable UUID documentId,
+                                       @Header(SimpMessageHeaderAccessor.SESSION_ID_HEADER) String connectionId,
                                        Principal principal) {
         try {
             log.debug("Обработка запроса на отключение от документа: {}, пользователь: {}", 
@@ -90,14 +95,16 @@ public class CollaborationWebSocketController {
             List<ActiveUserDto> usersBeforeDisconnect = collaborationService.getActiveUsersList(documentId);
             log.debug("Пользователей в документе до отключения: {}", usersBeforeDisconnect.size());
 
-            collaborationService.disconnectUserFromDocument(documentId, userId);
+            boolean departed = collaborationService.disconnectUserFromDocument(documentId, connectionId).isPresent();
             log.debug("Пользователь {} успешно отключен от документа {}", userId, documentId);
 
-            try {
-                collaborationService.notifyUserLeft(documentId, userId, username);
-                log.debug("Уведомление об отключении пользователя {} отправлено", username);
-            } catch (Exception e) {
-                log.error("Ошибка при отправке уведомления об отключении пользователя {}: {}", username, e.getMessage(), e);
+            if (departed) {
+                try {
+                    collaborationService.notifyUserLeft(documentId, userId, username);
+                    log.debug("Уведомление об отключении пользователя {} отправлено", username);
+                } catch (Exception e) {
+                    log.error("Ошибка при отправке уведомления об отключении пользователя {}: {}", username, e.getMessage(), e);
+                }
             }
 
             List<ActiveUserDto> remainingUsers = collaborationService.getActiveUsersList(documentId);
@@ -169,14 +176,15 @@ public class CollaborationWebSocketController {
             UUID userId = securityUtils.getCurrentUserIdOrThrow();
             log.debug("Получен ID пользователя: {}", userId);
 
-            Document updatedDocument = collaborationService.handleDocumentUpdate(
+            DocumentSessionService.AppliedUpdate update = collaborationService.handleDocumentUpdate(
                     documentId, updateRequest, userId);
 
             Map<String, Object> result = new HashMap<>();
             result.put("status", "success");
             result.put("documentId", documentId);
-            result.put("updatedAt", updatedDocument.getUpdatedAt());
-            result.put("content", updatedDocument.getContent());
+            result.put("updatedAt", update.updatedAt());
+            result.put("revision", update.revision());
+            result.put("resyncRequired", update.resyncRequired());
             result.put("clientId", updateRequest.getClientId());
             
             log.debug("Документ {} успешно обновлен пользователем {}", documentId, userId);
@@ -213,14 +221,16 @@ public class CollaborationWebSocketController {
             updateRequest.setOperations(Collections.singletonList(operation));
             updateRequest.setClientId(operation.getClientId());
             
-            Document updatedDocument = collaborationService.handleDocumentUpdate(
+            DocumentSessionService.AppliedUpdate update = collaborationService.handleDocumentUpdate(
                     documentId, updateRequest, userId);
             
             Map<String, Object> result = new HashMap<>();
             result.put("status", "success");
             result.put("documentId", documentId);
             result.put("operation", operation);
-            result.put("updatedAt", updatedDocument.getUpdatedAt());
+            result.put("updatedAt", update.updatedAt());
+            result.put("revision", update.revision());
+            result.put("resyncRequired", update.resyncRequired());
             result.put("clientId", operation.getClientId());
             
             return result;
@@ -256,14 +266,16 @@ public class CollaborationWebSocketController {
                 operation.setServerTimestamp(timestamp);
             }
             
-            Document updatedDocument = collaborationService.handleDocumentUpdate(
+            DocumentSessionService.AppliedUpdate update = collaborationService.handleDocumentUpdate(
                     documentId, updateRequest, userId);
             
             Map<String, Object> result = new HashMap<>();
             result.put("status", "success");
             result.put("documentId", documentId);
             result.put("operationsCount", updateRequest.getOperations().size());
-            result.put("updatedAt", updatedDocument.getUpdatedAt());
+            result.put("updatedAt", update.updatedAt());
+            result.put("revision", update.revision());
+            result.put("resyncRequired", update.resyncRequired());
             result.put("clientId", updateRequest.getClientId());
             
             log.debug("Пакет операций успешно обработан для документа {}", documentId);
@@ -279,6 +291,36 @@ public class CollaborationWebSocketController {
         }
     }
     
+    @MessageMapping("/documents/{documentId}/resync")
+    @SendToUser("/queue/document-resync")
+    @PreAuthorize("isAuthenticated()")
+    public Map<String, Object> handleResync(@DestinationVariable UUID documentId,
+                                            @Payload(required = false) Map<String, Object> payload) {
+        Object clientId = payload != null ? payload.get("clientId") : null;
+        try {
+            UUID userId = securityUtils.getCurrentUserIdOrThrow();
+            log.debug("Запрос полного содержимого документа {} от клиента {}", documentId, clientId);
+
+            Document document = collaborationService.getResyncState(documentId, userId);
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("status", "success");
+            result.put("documentId", documentId);
+            result.put("content", document.getContent());
+            result.put("updatedAt", document.getUpdatedAt());
+            result.put("revision", document.getRevision());
+            result.put("clientId", clientId);
+            return result;
+        } catch (Exception e) {
+            log.error("Ошибка при синхронизации документа {}: {}", documentId, e.getMessage(), e);
+            Map<String, Object> errorResult = new HashMap<>();
+            errorResult.put("status", "error");
+            errorResult.put("message", e.getMessage());
+            errorResult.put("clientId", clientId);
+            return errorResult;
+        }
+    }
+
     @MessageExceptionHandler
     @SendToUser("/queue/errors")
     public Map<String, Object> handleException(Exception exception) {
@@ -1,15 +1,22 @@
 package dsr.practice.docseditor.controller;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import dsr.practice.docseditor.dto.ApiResponse;
+import dsr.practice.docseditor.dto.ContentRangeDto;
 import dsr.practice.docseditor.dto.CreateDocumentRequest;
+import dsr.practice.docseditor.dto.DocumentPageDto;
 import dsr.practice.docseditor.dto.DocumentUpdateRequest;
+import dsr.practice.docseditor.dto.ImportResultDto;
 import dsr.practice.docseditor.dto.SaveVersionRequest;
+import dsr.practice.docseditor.dto.VersionPageDto;
 import dsr.practice.docseditor.exception.AccessDeniedException;
+import dsr.practice.docseditor.exception.DocumentImportException;
 import dsr.practice.docseditor.exception.DocumentNotFoundException;
 import dsr.practice.docseditor.exception.DuplicateVersionNameException;
 import dsr.practice.docseditor.model.Document;
 import dsr.practice.docseditor.model.DocumentVersion;
 import dsr.practice.docseditor.service.CollaborationService;
+import dsr.practice.docseditor.service.DocumentExportService;
 import dsr.practice.docseditor.service.DocumentService;
 import dsr.practice.docseditor.utils.SecurityUtils;
 import jakarta.validation.Valid;
@@ -17,12 +24,19 @@ import jakarta.validation.ValidationException;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
 import java.util.List;
 import java.util.UUID;
 import dsr.practice.docseditor.dto.ActiveUserDto;
@@ -33,16 +47,26 @@ import dsr.practice.docseditor.dto.ActiveUserDto;
 @Slf4j
 @RequiredArgsConstructor
 public class DocumentController {
+    private static final String EXPORT_ARCHIVE_TYPE = "application/zip";
+
     private final DocumentService documentService;
     private final SecurityUtils securityUtils;
     private final CollaborationService collaborationService;
+    private final DocumentExportService documentExportService;
 
     @GetMapping
     @PreAuthorize("isAuthenticated()")
-    public ResponseEntity<ApiResponse<List<Document>>> getAllDocuments() {
+    public ResponseEntity<ApiResponse<DocumentPageDto>> getAllDocuments(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit,
+            @RequestParam(defaultValue = "DESC") Sort.Direction direction
+    ) {
         try {
-            List<Document> documents = documentService.getCurrentUserDocuments();
+            DocumentPageDto documents = documentService.getCurrentUserDocuments(cursor, limit, direction);
             return ResponseEntity.ok(ApiResponse.success(documents));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(ApiResponse.error(e.getMessage(), "INVALID_CURSOR"));
         } catch (Exception e) {
             log.error("Error getting user documents", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -50,6 +74,51 @@ public class DocumentController {
         }
     }
 
+    @GetMapping(value = "/export", produces = EXPORT_ARCHIVE_TYPE)
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<StreamingResponseBody> exportDocuments() {
+        try {
+            UUID userId = securityUtils.getCurrentUserIdOrThrow();
+
+            StreamingResponseBody body = out -> documentExportService.exportDocuments(userId, out);
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"documents.zip\"")
+                    .contentType(MediaType.parseMediaType(EXPORT_ARCHIVE_TYPE))
+                    .body(body);
+        } catch (Exception e) {
+            log.error("Error exporting user documents", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<ApiResponse<ImportResultDto>> importDocuments(InputStream body) {
+        try {
+            UUID userId = securityUtils.getCurrentUserIdOrThrow();
+
+            ImportResultDto result = documentExportService.importDocuments(body, userId);
+            return ResponseEntity.status(HttpStatus.CREATED).body(ApiResponse.success(result));
+        } catch (DocumentImportException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IllegalArgumentException || cause instanceof JsonProcessingException) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                        .body(ApiResponse.error(e.getMessage(), "INVALID_IMPORT", e.getImported()));
+            }
+            if (cause instanceof DataIntegrityViolationException) {
+                return ResponseEntity.status(HttpStatus.CONFLICT)
+                        .body(ApiResponse.error("Import contains conflicting versions", "IMPORT_CONFLICT", e.getImported()));
+            }
+            log.error("Error importing documents", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to import documents", "SERVER_ERROR", e.getImported()));
+        } catch (Exception e) {
+            log.error("Error importing documents", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to import documents", "SERVER_ERROR"));
+        }
+    }
+
     @PostMapping
     @PreAuthorize("isAuthenticated()")
     public ResponseEntity<ApiResponse<Document>> createDocument(
@@ -93,6 +162,73 @@ public class DocumentController {
         }
     }
 
+    @GetMapping("/{documentId}/content")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<ApiResponse<ContentRangeDto>> getContentRange(
+            @PathVariable UUID documentId,
+            @RequestParam(defaultValue = "0") int offset,
+            @RequestParam(defaultValue = "65536") int length
+    ) {
+        try {
+            UUID userId = securityUtils.getCurrentUserIdOrThrow();
+
+            ContentRangeDto range = documentService.getContentRange(documentId, offset, length, userId);
+            return ResponseEntity.ok(ApiResponse.success(range));
+        } catch (DocumentNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(ApiResponse.error("Document not found", "NOT_FOUND"));
+        } catch (AccessDeniedException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(ApiResponse.error("Access denied", "ACCESS_DENIED"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(ApiResponse.error(e.getMessage(), "INVALID_RANGE"));
+        } catch (Exception e) {
+            log.error("Error getting content range of document {}", documentId, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to retrieve document content", "SERVER_ERROR"));
+        }
+    }
+
+    @GetMapping(value = "/{documentId}/crdt-state", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<byte[]> getCrdtState(@PathVariable UUID documentId) {
+        try {
+            UUID userId = securityUtils.getCurrentUserIdOrThrow();
+
+            return ResponseEntity.ok(documentService.getCrdtState(documentId, userId));
+        } catch (DocumentNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        } catch (AccessDeniedException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        } catch (Exception e) {
+            log.error("Error getting CRDT state of document {}", documentId, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    @GetMapping(value = "/{documentId}/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<StreamingResponseBody> exportDocument(@PathVariable UUID documentId) {
+        try {
+            UUID userId = securityUtils.getCurrentUserIdOrThrow();
+
+            Document document = documentService.getDocumentForExport(documentId, userId);
+            StreamingResponseBody body = out -> documentExportService.exportDocument(document, out);
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + documentId + ".ndjson\"")
+                    .contentType(MediaType.APPLICATION_NDJSON)
+                    .body(body);
+        } catch (DocumentNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        } catch (AccessDeniedException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        } catch (Exception e) {
+            log.error("Error exporting document {}", documentId, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     @PutMapping("/{documentId}")
     @PreAuthorize("isAuthenticated()")
     public ResponseEntity<ApiResponse<Document>> updateDocumentTitle(
@@ -109,6 +245,9 @@ public class DocumentController {
         } catch (AccessDeniedException e) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN)
                     .body(ApiResponse.error("Access denied", "ACCESS_DENIED"));
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(ApiResponse.error("Document was modified concurrently", "CONCURRENT_MODIFICATION"));
         } catch (Exception e) {
             log.error("Error updating document title {}", documentId, e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -125,8 +264,6 @@ public class DocumentController {
             Document updatedDocument = documentService.updateDocumentContent(
                     documentId, request);
 
-            collaborationService.notifyDocumentUpdate(documentId, updatedDocument, request.getClientId());
-
             return ResponseEntity.ok(ApiResponse.success(updatedDocument));
 
         } catch (DocumentNotFoundException e) {
@@ -135,6 +272,9 @@ public class DocumentController {
         } catch (AccessDeniedException e) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN)
                     .body(ApiResponse.error("Access denied", "ACCESS_DENIED"));
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(ApiResponse.error("Document was modified concurrently", "CONCURRENT_MODIFICATION"));
         } catch (Exception e) {
             log.error("Error updating document content {}", documentId, e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -196,11 +336,13 @@ public class DocumentController {
 
     @GetMapping("/{documentId}/versions")
     @PreAuthorize("isAuthenticated()")
-    public ResponseEntity<ApiResponse<List<DocumentVersion>>> getDocumentVersions(
-            @PathVariable UUID documentId
+    public ResponseEntity<ApiResponse<VersionPageDto>> getDocumentVersions(
+            @PathVariable UUID documentId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit
     ) {
         try {
-            List<DocumentVersion> versions = documentService.findDocumentVersions(documentId);
+            VersionPageDto versions = documentService.findVersionSummaries(documentId, cursor, limit);
             return ResponseEntity.ok(ApiResponse.success(versions));
         } catch (DocumentNotFoundException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
@@ -208,6 +350,9 @@ public class DocumentController {
         } catch (AccessDeniedException e) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN)
                     .body(ApiResponse.error("Access denied", "ACCESS_DENIED"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(ApiResponse.error(e.getMessage(), "INVALID_CURSOR"));
         } catch (Exception e) {
             log.error("Error getting document versions {}", documentId, e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -215,6 +360,28 @@ public class DocumentController {
         }
     }
 
+    @GetMapping("/{documentId}/versions/{versionId}")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<ApiResponse<DocumentVersion>> getDocumentVersion(
+            @PathVariable UUID documentId,
+            @PathVariable UUID versionId
+    ) {
+        try {
+            DocumentVersion version = documentService.getDocumentVersion(documentId, versionId);
+            return ResponseEntity.ok(ApiResponse.success(version));
+        } catch (DocumentNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(ApiResponse.error(e.getMessage(), "NOT_FOUND"));
+        } catch (AccessDeniedException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(ApiResponse.error("Access denied", "ACCESS_DENIED"));
+        } catch (Exception e) {
+            log.error("Error getting version {} of document {}", versionId, documentId, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to retrieve document version", "SERVER_ERROR"));
+        }
+    }
+
     @PostMapping("/{documentId}/versions/{versionId}/restore")
     @PreAuthorize("isAuthenticated()")
     public ResponseEntity<ApiResponse<Document>> restoreVersion(
@@ -224,8 +391,6 @@ public class DocumentController {
         try {
             Document document = documentService.restoreDocumentVersion(documentId, versionId);
 
-            collaborationService.notifyDocumentRestore(documentId, document);
-            
             return ResponseEntity.ok(ApiResponse.success(document));
         } catch (DocumentNotFoundException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
@@ -233,6 +398,9 @@ public class DocumentController {
         } catch (AccessDeniedException e) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN)
                     .body(ApiResponse.error("Access denied", "ACCESS_DENIED"));
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(ApiResponse.error("Document was modified concurrently", "CONCURRENT_MODIFICATION"));
         } catch (Exception e) {
             log.error("Error restoring document version {} {}", documentId, versionId, e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -23,4 +23,8 @@ public class ApiResponse<T> {
     public static <T> ApiResponse<T> error(String message, String errorCode) {
         return new ApiResponse<>(false, null, message, errorCode, LocalDateTime.now());
     }
+
+    public static <T> ApiResponse<T> error(String message, String errorCode, T data) {
+        return new ApiResponse<>(false, data, message, errorCode, LocalDateTime.now());
+    }
 }
\ No newline at end of file
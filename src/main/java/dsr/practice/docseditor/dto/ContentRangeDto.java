@@ -0,0 +1,48 @@
+package dsr.practice.docseditor.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ContentRangeDto {
+    private UUID documentId;
+    private int offset;
+    private int length;
+    private int totalLength;
+    private long revision;
+    private LocalDateTime updatedAt;
+    private String text;
+
+    /**
+     * Вырезает диапазон [offset, offset + length), обрезанный по длине текста и расширенный так,
+     * чтобы не разрывать суррогатные пары.
+     */
+    public static ContentRangeDto of(UUID documentId, CharSequence content, int offset, int length,
+                                     long revision, LocalDateTime updatedAt) {
+        int start = Math.min(offset, content.length());
+        int end = (int) Math.min((long) start + length, content.length());
+        if (start > 0 && start < content.length() && Character.isLowSurrogate(content.charAt(start))) {
+            start--;
+        }
+        if (end > start && end < content.length() && Character.isHighSurrogate(content.charAt(end - 1))) {
+            end++;
+        }
+        return ContentRangeDto.builder()
+                .documentId(documentId)
+                .offset(start)
+                .length(end - start)
+                .totalLength(content.length())
+                .revision(revision)
+                .updatedAt(updatedAt)
+                .text(content.subSequence(start, end).toString())
+                .build();
+    }
+}
@@ -0,0 +1,14 @@
+package dsr.practice.docseditor.dto;
+
+public record CrdtId(String clientId, long counter) implements Comparable<CrdtId> {
+
+    @Override
+    public int compareTo(CrdtId other) {
+        int byCounter = Long.compare(counter, other.counter);
+        return byCounter != 0 ? byCounter : clientId.compareTo(other.clientId);
+    }
+
+    public CrdtId plus(long offset) {
+        return new CrdtId(clientId, counter + offset);
+    }
+}
@@ -0,0 +1,17 @@
+package dsr.practice.docseditor.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class DocumentPageDto {
+    private List<DocumentSummaryDto> documents;
+    private String nextCursor;
+}
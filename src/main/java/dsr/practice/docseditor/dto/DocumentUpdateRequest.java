@@ -10,6 +10,7 @@ import java.util.UUID;
 public class DocumentUpdateRequest {
     private List<EditOperation> operations;
     private LocalDateTime lastKnownUpdate;
+    private Long baseRevision;
     private String clientId;
     private UUID userId;
 }
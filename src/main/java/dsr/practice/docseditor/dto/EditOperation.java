@@ -1,12 +1,15 @@
 package dsr.practice.docseditor.dto;
 
 import lombok.AllArgsConstructor;
+import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
 import java.util.UUID;
 
 @Data
+@Builder(toBuilder = true)
 @AllArgsConstructor
 @NoArgsConstructor
 public class EditOperation {
@@ -14,8 +17,18 @@ public class EditOperation {
     private int position;
     private String type;
     private String character;
+    private Integer length;
+    private List<OperationComponent> components;
     private String clientId;
     private long clientTimestamp;
     private Long serverTimestamp;
     private UUID userId;
-} 
\ No newline at end of file
+    private Long revision;
+    private CrdtId id;
+    private CrdtId origin;
+    private Long clock;
+
+    public int deletedLength() {
+        return length == null || length < 1 ? 1 : length;
+    }
+}
@@ -0,0 +1,34 @@
+package dsr.practice.docseditor.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Строка NDJSON-выгрузки: запись документа, за которой следуют записи его версий.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ExportRecord {
+    public static final String DOCUMENT = "document";
+    public static final String VERSION = "version";
+
+    private String type;
+    private UUID id;
+    private String title;
+    private String versionName;
+    private Integer sequence;
+    private String content;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+}
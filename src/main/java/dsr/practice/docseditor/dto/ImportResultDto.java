@@ -0,0 +1,15 @@
+package dsr.practice.docseditor.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ImportResultDto {
+    private int documents;
+    private int versions;
+}
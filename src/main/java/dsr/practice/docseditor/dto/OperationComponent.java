@@ -0,0 +1,16 @@
+package dsr.practice.docseditor.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class OperationComponent {
+    private String type;
+    private Integer length;
+    private String text;
+}
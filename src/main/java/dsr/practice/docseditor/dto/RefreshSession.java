@@ -0,0 +1,23 @@
+package dsr.practice.docseditor.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RefreshSession {
+    private UUID userId;
+    private String username;
+    private String email;
+    private String deviceInfo;
+    private String ipAddress;
+    private LocalDateTime createdAt;
+    private LocalDateTime expiresAt;
+}
@@ -0,0 +1,23 @@
+package dsr.practice.docseditor.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class VersionSummaryDto {
+    private UUID id;
+    private String versionName;
+    private UUID createdBy;
+    private String authorName;
+    private LocalDateTime createdAt;
+    private Integer sequence;
+    private Integer size;
+}
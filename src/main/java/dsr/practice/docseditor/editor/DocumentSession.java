@@ -0,0 +1,295 @@
+package dsr.practice.docseditor.editor;
+
+import dsr.practice.docseditor.dto.EditOperation;
+import dsr.practice.docseditor.editor.crdt.RgaCodec;
+import dsr.practice.docseditor.editor.crdt.RgaDocument;
+import dsr.practice.docseditor.model.Document;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Живое состояние открытого документа. Задачи над ним проходят через {@link #execute(Supplier)} и выполняются
+ * строго по одной, поэтому состояние не требует блокировок. Задачи работают только с памятью: очередь может
+ * разобрать поток чужого запроса, поэтому запись в базу выполняется вне ее.
+ */
+public class DocumentSession {
+    private final UUID documentId;
+    private final UUID createdBy;
+    private final Rope content;
+    private final RgaDocument crdt;
+    private LocalDateTime updatedAt;
+    private volatile long revision;
+    private volatile boolean closed;
+    private volatile CompletableFuture<Void> closing = CompletableFuture.completedFuture(null);
+
+    private final int historySize;
+    private final Deque<EditOperation> history = new ArrayDeque<>();
+
+    private final List<EditOperation> unlogged = new ArrayList<>();
+    private volatile int unflushedOperations;
+    private volatile long dirtySince;
+    private volatile long snapshotRevision;
+    private volatile long snapshotAt = System.currentTimeMillis();
+
+    private final Map<String, UUID> editors = new HashMap<>();
+    private final Queue<FutureTask<?>> mailbox = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+
+    public DocumentSession(Document document, int historySize, RgaDocument crdt) {
+        this.documentId = document.getId();
+        this.createdBy = document.getCreatedBy();
+        this.content = new Rope(document.getContent());
+        this.crdt = crdt;
+        this.updatedAt = document.getUpdatedAt();
+        this.revision = document.getRevision() == null ? 0 : document.getRevision();
+        this.snapshotRevision = revision;
+        this.historySize = historySize;
+    }
+
+    public <T> T execute(Supplier<T> task) {
+        FutureTask<T> future = new FutureTask<>(task::get);
+        mailbox.offer(future);
+        if (pending.getAndIncrement() == 0) {
+            drain();
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ожидание применения операций прервано", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    public <T> Optional<T> executeIfOpen(Supplier<T> task) {
+        return execute(() -> closed ? Optional.empty() : Optional.of(task.get()));
+    }
+
+    private void drain() {
+        do {
+            mailbox.poll().run();
+        } while (pending.decrementAndGet() != 0);
+    }
+
+    public long record(EditOperation operation) {
+        operation.setRevision(revision + 1);
+        remember(operation);
+        unlogged.add(operation);
+        return revision;
+    }
+
+    public void replay(EditOperation operation) {
+        remember(operation);
+    }
+
+    private void remember(EditOperation operation) {
+        revision = operation.getRevision();
+        history.addLast(operation);
+        if (history.size() > historySize) {
+            history.removeFirst();
+        }
+    }
+
+    public Optional<List<EditOperation>> operationsSince(long baseRevision) {
+        if (baseRevision > revision || baseRevision < revision - history.size()) {
+            return Optional.empty();
+        }
+        List<EditOperation> operations = new ArrayList<>((int) (revision - baseRevision));
+        for (EditOperation operation : history) {
+            if (operation.getRevision() > baseRevision) {
+                operations.add(operation);
+            }
+        }
+        return Optional.of(operations);
+    }
+
+    /**
+     * Значение clock CRDT, которое видел клиент, получивший все операции до ревизии {@code baseRevision}.
+     * Пусто, если ревизия вышла за пределы истории.
+     */
+    public OptionalLong clockAt(long baseRevision) {
+        if (crdt == null || baseRevision > revision) {
+            return OptionalLong.empty();
+        }
+        if (baseRevision == revision) {
+            return OptionalLong.of(crdt.getClock());
+        }
+        for (Iterator<EditOperation> it = history.descendingIterator(); it.hasNext(); ) {
+            EditOperation operation = it.next();
+            if (operation.getRevision() <= baseRevision) {
+                return operation.getRevision() == baseRevision && operation.getClock() != null
+                        ? OptionalLong.of(operation.getClock())
+                        : OptionalLong.empty();
+            }
+        }
+        return OptionalLong.empty();
+    }
+
+    public void markDirty(int operations) {
+        if (dirtySince == 0) {
+            dirtySince = System.currentTimeMillis();
+        }
+        unflushedOperations += operations;
+    }
+
+    public boolean isDirty() {
+        return dirtySince != 0;
+    }
+
+    public boolean isFlushDue(long now, long flushIntervalMs, int flushOperationThreshold) {
+        long since = dirtySince;
+        return since != 0 && (now - since >= flushIntervalMs || unflushedOperations >= flushOperationThreshold);
+    }
+
+    public boolean isSnapshotDue(long now, long snapshotIntervalMs, int snapshotOperationThreshold) {
+        long behind = revision - snapshotRevision;
+        return behind >= snapshotOperationThreshold || (behind > 0 && now - snapshotAt >= snapshotIntervalMs);
+    }
+
+    public boolean hasUnsnapshottedChanges() {
+        return revision > snapshotRevision;
+    }
+
+    public void markSnapshotted(long revision) {
+        snapshotRevision = Math.max(snapshotRevision, revision);
+        snapshotAt = System.currentTimeMillis();
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(content.toString(), updatedAt, revision, null, List.of());
+    }
+
+    /**
+     * Забирает операции, еще не записанные в журнал, и при {@code withContent} добавляет снимок содержимого.
+     * Если запись журнала не удалась, операции возвращаются в сессию через {@link #restore(Snapshot)}.
+     */
+    public Snapshot takeSnapshot(boolean withContent) {
+        Snapshot snapshot = new Snapshot(
+                withContent ? content.toString() : null,
+                updatedAt,
+                revision,
+                withContent && crdt != null ? RgaCodec.encode(crdt) : null,
+                List.copyOf(unlogged));
+        unlogged.clear();
+        dirtySince = 0;
+        unflushedOperations = 0;
+        return snapshot;
+    }
+
+    public void restore(Snapshot snapshot) {
+        if (snapshot.operations().isEmpty()) {
+            return;
+        }
+        unlogged.addAll(0, snapshot.operations());
+        markDirty(snapshot.operations().size());
+    }
+
+    /**
+     * Переводит сессию в состояние закрытия: новые задачи через {@link #executeIfOpen(Supplier)} не выполняются,
+     * а ожидающие могут дождаться {@link #closing()}. Закрытие завершается {@link #markReleased()} или
+     * отменяется {@link #reopen()}.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closing = new CompletableFuture<>();
+        closed = true;
+    }
+
+    public void reopen() {
+        closed = false;
+        closing.complete(null);
+    }
+
+    public void markReleased() {
+        closing.complete(null);
+    }
+
+    public CompletableFuture<Void> closing() {
+        return closing;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public Document toDocument(String snapshot) {
+        return Document.builder()
+                .id(documentId)
+                .content(snapshot)
+                .createdBy(createdBy)
+                .updatedAt(updatedAt)
+                .revision(revision)
+                .build();
+    }
+
+    public UUID getDocumentId() {
+        return documentId;
+    }
+
+    public UUID getCreatedBy() {
+        return createdBy;
+    }
+
+    public Rope getContent() {
+        return content;
+    }
+
+    public RgaDocument getCrdt() {
+        return crdt;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    public long getRevision() {
+        return revision;
+    }
+
+    public void addEditor(String connectionId, UUID userId) {
+        editors.put(connectionId, userId);
+    }
+
+    public UUID removeEditor(String connectionId) {
+        return editors.remove(connectionId);
+    }
+
+    public boolean hasEditor(UUID userId) {
+        return editors.containsValue(userId);
+    }
+
+    public boolean hasEditors() {
+        return !editors.isEmpty();
+    }
+
+    public record Snapshot(String content, LocalDateTime updatedAt, long revision, byte[] crdtState,
+                           List<EditOperation> operations) {
+    }
+}
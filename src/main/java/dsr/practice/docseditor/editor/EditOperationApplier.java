@@ -0,0 +1,144 @@
+package dsr.practice.docseditor.editor;
+
+import dsr.practice.docseditor.dto.EditOperation;
+import dsr.practice.docseditor.dto.OperationComponent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Component
+@Slf4j
+public class EditOperationApplier {
+
+    public boolean apply(Rope content, EditOperation operation) {
+        switch (operation.getType()) {
+            case "insert" -> {
+                if (operation.getCharacter() == null
+                        || operation.getPosition() < 0 || operation.getPosition() > content.length()) {
+                    log.warn("Неверный индекс для операции вставки: {}", operation.getPosition());
+                    return false;
+                }
+                content.insert(operation.getPosition(), operation.getCharacter());
+                return true;
+            }
+            case "delete" -> {
+                int length = operation.deletedLength();
+                if (operation.getPosition() < 0 || operation.getPosition() + length > content.length()) {
+                    log.warn("Неверный диапазон для операции удаления: {} (длина {})", operation.getPosition(), length);
+                    return false;
+                }
+                content.delete(operation.getPosition(), length);
+                return true;
+            }
+            case "replace" -> {
+                log.info("Выполнили операцию замены");
+                content.replace(operation.getCharacter());
+                return true;
+            }
+            case null, default -> {
+                log.warn("Неверный тип операции: {}", operation.getType());
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Раскрывает составные операции в простые. Составная операция проверяется целиком до раскрытия по тексту
+     * длины {@code length}, к которому применяется пакет: при отрицательной длине, неизвестном компоненте или
+     * выходе retain/delete за текст она отбрасывается полностью, а не применяется частично.
+     */
+    public List<EditOperation> expand(List<EditOperation> operations, int length) {
+        if (operations == null || operations.stream().noneMatch(operation -> "compose".equals(operation.getType()))) {
+            return operations;
+        }
+
+        List<EditOperation> expanded = new ArrayList<>(operations.size());
+        int current = length;
+        for (EditOperation operation : operations) {
+            if (!"compose".equals(operation.getType())) {
+                expanded.add(operation);
+                current = lengthAfter(operation, current);
+                continue;
+            }
+            List<EditOperation> parts = expandCompose(operation, current);
+            if (parts == null) {
+                log.warn("Составная операция клиента {} отклонена: компоненты не согласуются с текстом длиной {}",
+                        operation.getClientId(), current);
+                continue;
+            }
+            for (EditOperation part : parts) {
+                expanded.add(part);
+                current = lengthAfter(part, current);
+            }
+        }
+        return expanded;
+    }
+
+    private static List<EditOperation> expandCompose(EditOperation operation, int length) {
+        if (operation.getComponents() == null || operation.getPosition() < 0 || operation.getPosition() > length) {
+            return null;
+        }
+
+        List<EditOperation> parts = new ArrayList<>(operation.getComponents().size());
+        int cursor = operation.getPosition();
+        int remaining = length;
+        for (OperationComponent component : operation.getComponents()) {
+            int componentLength = component.getLength() == null ? 0 : component.getLength();
+            if (componentLength < 0) {
+                return null;
+            }
+            switch (component.getType()) {
+                case "retain" -> {
+                    if (componentLength > remaining - cursor) {
+                        return null;
+                    }
+                    cursor += componentLength;
+                }
+                case "insert" -> {
+                    if (component.getText() != null && !component.getText().isEmpty()) {
+                        parts.add(part(operation, "insert", cursor, component.getText(), null));
+                        cursor += component.getText().length();
+                        remaining += component.getText().length();
+                    }
+                }
+                case "delete" -> {
+                    if (componentLength > remaining - cursor) {
+                        return null;
+                    }
+                    if (componentLength > 0) {
+                        parts.add(part(operation, "delete", cursor, null, componentLength));
+                        remaining -= componentLength;
+                    }
+                }
+                case null, default -> {
+                    return null;
+                }
+            }
+        }
+        return parts;
+    }
+
+    private static int lengthAfter(EditOperation operation, int length) {
+        String text = operation.getCharacter() == null ? "" : operation.getCharacter();
+        return switch (operation.getType()) {
+            case "insert" -> length + text.length();
+            case "delete" -> Math.max(0, length - operation.deletedLength());
+            case "replace" -> text.length();
+            case null, default -> length;
+        };
+    }
+
+    private static EditOperation part(EditOperation composite, String type, int position, String text, Integer length) {
+        return composite.toBuilder()
+                .type(type)
+                .position(position)
+                .character(text)
+                .length(length)
+                .components(null)
+                .id(null)
+                .origin(null)
+                .build();
+    }
+}
@@ -0,0 +1,80 @@
+package dsr.practice.docseditor.editor;
+
+import dsr.practice.docseditor.dto.EditOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Склеивает идущие подряд вставки и удаления одного клиента в операции над диапазоном.
+ */
+@Component
+public class OperationCoalescer {
+
+    public List<EditOperation> coalesce(List<EditOperation> operations) {
+        if (operations == null || operations.size() < 2) {
+            return operations;
+        }
+
+        List<EditOperation> coalesced = new ArrayList<>(operations.size());
+        EditOperation run = null;
+        StringBuilder text = null;
+        for (EditOperation operation : operations) {
+            if (run != null && sameSource(run, operation)) {
+                if (text != null && "insert".equals(operation.getType()) && operation.getCharacter() != null
+                        && operation.getPosition() == run.getPosition() + text.length()) {
+                    text.append(operation.getCharacter());
+                    continue;
+                }
+                if (text == null && "delete".equals(operation.getType())) {
+                    int length = operation.deletedLength();
+                    if (operation.getPosition() + length == run.getPosition()) {
+                        run.setPosition(operation.getPosition());
+                        run.setLength(run.deletedLength() + length);
+                        continue;
+                    }
+                    if (operation.getPosition() == run.getPosition()) {
+                        run.setLength(run.deletedLength() + length);
+                        continue;
+                    }
+                }
+            }
+
+            close(run, text, coalesced);
+            run = null;
+            text = null;
+            if (isPositional(operation) && "insert".equals(operation.getType()) && operation.getCharacter() != null) {
+                run = operation.toBuilder().build();
+                text = new StringBuilder(operation.getCharacter());
+            } else if (isPositional(operation) && "delete".equals(operation.getType())) {
+                run = operation.toBuilder().length(operation.deletedLength()).build();
+            } else {
+                coalesced.add(operation);
+            }
+        }
+        close(run, text, coalesced);
+        return coalesced;
+    }
+
+    private static void close(EditOperation run, StringBuilder text, List<EditOperation> target) {
+        if (run == null) {
+            return;
+        }
+        if (text != null) {
+            run.setCharacter(text.toString());
+        }
+        target.add(run);
+    }
+
+    private static boolean sameSource(EditOperation run, EditOperation operation) {
+        return isPositional(operation)
+                && Objects.equals(run.getClientId(), operation.getClientId())
+                && Objects.equals(run.getUserId(), operation.getUserId());
+    }
+
+    private static boolean isPositional(EditOperation operation) {
+        return operation.getId() == null && operation.getOrigin() == null;
+    }
+}
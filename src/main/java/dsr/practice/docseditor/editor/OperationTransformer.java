@@ -0,0 +1,146 @@
+package dsr.practice.docseditor.editor;
+
+import dsr.practice.docseditor.dto.EditOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Операционное преобразование позиционных вставок и удалений диапазона. При вставке в одну позицию первой
+ * остается операция, уже примененная на сервере.
+ */
+@Component
+public class OperationTransformer {
+
+    public List<EditOperation> transform(List<EditOperation> operations, List<EditOperation> applied) {
+        return transform(operations, applied, false).left();
+    }
+
+    /**
+     * Преобразует left и right друг против друга. Операции right проходят по рабочему списку left по одной,
+     * поэтому стоимость пропорциональна произведению длин списков.
+     */
+    Pair transform(List<EditOperation> left, List<EditOperation> right, boolean leftWinsTie) {
+        if (left.isEmpty() || right.isEmpty()) {
+            return new Pair(left, right);
+        }
+        List<EditOperation> working = new ArrayList<>(left);
+        List<EditOperation> transformedRight = new ArrayList<>(right.size());
+        for (EditOperation against : right) {
+            List<EditOperation> pieces = List.of(against);
+            int i = 0;
+            while (i < working.size() && !pieces.isEmpty()) {
+                Pair cell = transformCell(List.of(working.get(i)), pieces, leftWinsTie);
+                splice(working, i, cell.left());
+                i += cell.left().size();
+                pieces = cell.right();
+            }
+            transformedRight.addAll(pieces);
+        }
+        return new Pair(working, transformedRight);
+    }
+
+    /**
+     * Одна клетка преобразования: операция и ее части после разбиения удаления, списки из одного-двух элементов.
+     */
+    private Pair transformCell(List<EditOperation> left, List<EditOperation> right, boolean leftWinsTie) {
+        if (left.isEmpty() || right.isEmpty()) {
+            return new Pair(left, right);
+        }
+        if (left.size() == 1 && right.size() == 1) {
+            EditOperation a = left.getFirst();
+            EditOperation b = right.getFirst();
+            return new Pair(transform(a, b, leftWinsTie), transform(b, a, !leftWinsTie));
+        }
+        if (left.size() > 1) {
+            Pair head = transformCell(left.subList(0, 1), right, leftWinsTie);
+            Pair tail = transformCell(left.subList(1, left.size()), head.right(), leftWinsTie);
+            return new Pair(concat(head.left(), tail.left()), tail.right());
+        }
+        Pair head = transformCell(left, right.subList(0, 1), leftWinsTie);
+        Pair tail = transformCell(head.left(), right.subList(1, right.size()), leftWinsTie);
+        return new Pair(tail.left(), concat(head.right(), tail.right()));
+    }
+
+    private List<EditOperation> transform(EditOperation operation, EditOperation against, boolean winsTie) {
+        if ("replace".equals(operation.getType())) {
+            return List.of(operation);
+        }
+        if ("replace".equals(against.getType())) {
+            return List.of();
+        }
+
+        int position = operation.getPosition();
+        int otherPosition = against.getPosition();
+        boolean insert = "insert".equals(operation.getType());
+
+        if ("insert".equals(against.getType())) {
+            int inserted = against.getCharacter() == null ? 0 : against.getCharacter().length();
+            if (insert) {
+                boolean shifted = otherPosition < position || (otherPosition == position && !winsTie);
+                return List.of(shifted ? moveTo(operation, position + inserted) : operation);
+            }
+            int length = operation.deletedLength();
+            if (otherPosition <= position) {
+                return List.of(moveTo(operation, position + inserted));
+            }
+            if (otherPosition >= position + length) {
+                return List.of(operation);
+            }
+            int before = otherPosition - position;
+            return List.of(
+                    resize(operation, position, before),
+                    resize(operation, position + inserted, length - before));
+        }
+
+        if ("delete".equals(against.getType())) {
+            int removed = against.deletedLength();
+            int otherEnd = otherPosition + removed;
+            if (insert) {
+                if (position <= otherPosition) {
+                    return List.of(operation);
+                }
+                return List.of(moveTo(operation, position >= otherEnd ? position - removed : otherPosition));
+            }
+
+            int length = operation.deletedLength();
+            int end = position + length;
+            int overlap = Math.max(0, Math.min(end, otherEnd) - Math.max(position, otherPosition));
+            int start = position < otherPosition ? position : (position >= otherEnd ? position - removed : otherPosition);
+            if (length - overlap == 0) {
+                return List.of();
+            }
+            return List.of(resize(operation, start, length - overlap));
+        }
+
+        return List.of(operation);
+    }
+
+    private static EditOperation moveTo(EditOperation operation, int position) {
+        return operation.toBuilder().position(position).build();
+    }
+
+    private static EditOperation resize(EditOperation operation, int position, int length) {
+        return operation.toBuilder().position(position).length(length).build();
+    }
+
+    private static void splice(List<EditOperation> operations, int index, List<EditOperation> replacement) {
+        if (replacement.size() == 1) {
+            operations.set(index, replacement.getFirst());
+            return;
+        }
+        operations.remove(index);
+        operations.addAll(index, replacement);
+    }
+
+    private static List<EditOperation> concat(List<EditOperation> first, List<EditOperation> second) {
+        List<EditOperation> result = new ArrayList<>(first.size() + second.size());
+        result.addAll(first);
+        result.addAll(second);
+        return result;
+    }
+
+    record Pair(List<EditOperation> left, List<EditOperation> right) {
+    }
+}
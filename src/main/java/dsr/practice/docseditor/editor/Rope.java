@@ -0,0 +1,338 @@
+package dsr.practice.docseditor.editor;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Текстовый буфер документа: декартово дерево по неявному ключу с фрагментами до {@link #MAX_CHUNK} символов.
+ * Фрагмент у места удаления, ставший короче {@link #MIN_CHUNK}, склеивается с соседним.
+ */
+public final class Rope implements CharSequence {
+    static final int MAX_CHUNK = 1024;
+    static final int MIN_CHUNK = MAX_CHUNK / 4;
+
+    private Node root;
+
+    public Rope() {
+    }
+
+    public Rope(CharSequence text) {
+        if (text != null) {
+            root = build(text, 0, text.length());
+        }
+    }
+
+    @Override
+    public int length() {
+        return size(root);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return root == null || root.size == 0;
+    }
+
+    @Override
+    public char charAt(int index) {
+        checkIndex(index, length());
+        Node node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index < leftSize + node.text.length()) {
+                return node.text.charAt(index - leftSize);
+            } else {
+                index -= leftSize + node.text.length();
+                node = node.right;
+            }
+        }
+    }
+
+    public void insert(int position, CharSequence text) {
+        checkPosition(position, length());
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        if (root == null) {
+            root = build(text, 0, text.length());
+            return;
+        }
+        if (text.length() <= MAX_CHUNK && insertInPlace(root, position, text)) {
+            return;
+        }
+        Node[] parts = split(root, position);
+        root = merge(merge(parts[0], build(text, 0, text.length())), parts[1]);
+    }
+
+    public void delete(int position, int count) {
+        int length = length();
+        checkPosition(position, length);
+        if (count < 0 || position + count > length) {
+            throw new IndexOutOfBoundsException("Удаление за пределами текста: " + position + "+" + count + " > " + length);
+        }
+        if (count == 0) {
+            return;
+        }
+        if (!deleteInPlace(root, position, count)) {
+            Node[] head = split(root, position);
+            Node[] tail = split(head[1], count);
+            root = merge(head[0], tail[1]);
+        }
+        mergeSmallChunk(position);
+    }
+
+    public void replace(CharSequence text) {
+        root = text == null ? null : build(text, 0, text.length());
+    }
+
+    public String substring(int start, int end) {
+        int length = length();
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("Диапазон [" + start + ", " + end + ") за пределами текста длины " + length);
+        }
+        StringBuilder result = new StringBuilder(end - start);
+        appendRange(root, start, end, result);
+        return result.toString();
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder(length());
+        appendAll(root, result);
+        return result.toString();
+    }
+
+    int chunkCount() {
+        return count(root);
+    }
+
+    /**
+     * Склеивает фрагменты по обе стороны позиции, если один из них короче MIN_CHUNK, а вместе они не длиннее
+     * MAX_CHUNK. Если позиция внутри короткого фрагмента, он склеивается с предыдущим или следующим.
+     */
+    private void mergeSmallChunk(int position) {
+        int length = length();
+        if (length == 0) {
+            return;
+        }
+        int[] left = chunkAt(Math.max(position - 1, 0));
+        int[] right = chunkAt(Math.min(position, length - 1));
+        if (left[0] == right[0]) {
+            if (right[1] - right[0] >= MIN_CHUNK) {
+                return;
+            }
+            int[] previous = left[0] > 0 ? chunkAt(left[0] - 1) : null;
+            if (previous != null && right[1] - previous[0] <= MAX_CHUNK) {
+                left = previous;
+            } else if (right[1] < length) {
+                right = chunkAt(right[1]);
+            } else {
+                return;
+            }
+        } else if (left[1] - left[0] >= MIN_CHUNK && right[1] - right[0] >= MIN_CHUNK) {
+            return;
+        }
+        int start = left[0];
+        int end = right[1];
+        if (end - start > MAX_CHUNK) {
+            return;
+        }
+        // Разрезы по границам фрагментов не создают новых узлов: в середине ровно два склеиваемых фрагмента
+        Node[] head = split(root, start);
+        Node[] tail = split(head[1], end - start);
+        StringBuilder text = new StringBuilder(end - start);
+        appendAll(tail[0], text);
+        root = merge(merge(head[0], new Node(text)), tail[1]);
+    }
+
+    /**
+     * Границы [начало, конец) фрагмента, содержащего символ index.
+     */
+    private int[] chunkAt(int index) {
+        Node node = root;
+        int offset = 0;
+        while (true) {
+            int leftSize = size(node.left);
+            int chunkLength = node.text.length();
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index < leftSize + chunkLength) {
+                int start = offset + leftSize;
+                return new int[]{start, start + chunkLength};
+            } else {
+                index -= leftSize + chunkLength;
+                offset += leftSize + chunkLength;
+                node = node.right;
+            }
+        }
+    }
+
+    private static boolean insertInPlace(Node node, int position, CharSequence text) {
+        int leftSize = size(node.left);
+        int chunkLength = node.text.length();
+        boolean inserted;
+        if (position < leftSize) {
+            inserted = insertInPlace(node.left, position, text);
+        } else if (position <= leftSize + chunkLength) {
+            if (chunkLength + text.length() > MAX_CHUNK) {
+                return false;
+            }
+            node.text.insert(position - leftSize, text);
+            inserted = true;
+        } else {
+            inserted = insertInPlace(node.right, position - leftSize - chunkLength, text);
+        }
+        if (inserted) {
+            node.size += text.length();
+        }
+        return inserted;
+    }
+
+    private static boolean deleteInPlace(Node node, int position, int count) {
+        int leftSize = size(node.left);
+        int chunkLength = node.text.length();
+        boolean deleted;
+        if (position < leftSize) {
+            deleted = position + count <= leftSize && deleteInPlace(node.left, position, count);
+        } else if (position < leftSize + chunkLength) {
+            int offset = position - leftSize;
+            if (offset + count > chunkLength || count == chunkLength) {
+                return false;
+            }
+            node.text.delete(offset, offset + count);
+            deleted = true;
+        } else {
+            deleted = deleteInPlace(node.right, position - leftSize - chunkLength, count);
+        }
+        if (deleted) {
+            node.size -= count;
+        }
+        return deleted;
+    }
+
+    private static Node[] split(Node node, int position) {
+        if (node == null) {
+            return new Node[]{null, null};
+        }
+        int leftSize = size(node.left);
+        int chunkLength = node.text.length();
+        if (position <= leftSize) {
+            Node[] parts = split(node.left, position);
+            node.left = parts[1];
+            node.update();
+            return new Node[]{parts[0], node};
+        }
+        if (position >= leftSize + chunkLength) {
+            Node[] parts = split(node.right, position - leftSize - chunkLength);
+            node.right = parts[0];
+            node.update();
+            return new Node[]{node, parts[1]};
+        }
+        int offset = position - leftSize;
+        Node tail = new Node(new StringBuilder(chunkLength - offset).append(node.text, offset, chunkLength));
+        node.text.setLength(offset);
+        Node right = node.right;
+        node.right = null;
+        node.update();
+        return new Node[]{node, merge(tail, right)};
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            left.update();
+            return left;
+        }
+        right.left = merge(left, right.left);
+        right.update();
+        return right;
+    }
+
+    private static Node build(CharSequence text, int start, int end) {
+        Node result = null;
+        int chunk = MAX_CHUNK / 2;
+        for (int from = start; from < end; from += chunk) {
+            int to = Math.min(end, from + chunk);
+            result = merge(result, new Node(new StringBuilder(to - from).append(text, from, to)));
+        }
+        return result;
+    }
+
+    private static void appendAll(Node node, StringBuilder target) {
+        while (node != null) {
+            appendAll(node.left, target);
+            target.append(node.text);
+            node = node.right;
+        }
+    }
+
+    private static void appendRange(Node node, int start, int end, StringBuilder target) {
+        while (node != null && start < end) {
+            int leftSize = size(node.left);
+            int chunkLength = node.text.length();
+            if (start < leftSize) {
+                appendRange(node.left, start, Math.min(end, leftSize), target);
+            }
+            int chunkStart = Math.max(start - leftSize, 0);
+            int chunkEnd = Math.min(end - leftSize, chunkLength);
+            if (chunkStart < chunkEnd) {
+                target.append(node.text, chunkStart, chunkEnd);
+            }
+            start -= leftSize + chunkLength;
+            end -= leftSize + chunkLength;
+            if (end <= 0) {
+                return;
+            }
+            start = Math.max(start, 0);
+            node = node.right;
+        }
+    }
+
+    private static int count(Node node) {
+        return node == null ? 0 : count(node.left) + 1 + count(node.right);
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static void checkIndex(int index, int length) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Индекс " + index + " за пределами текста длины " + length);
+        }
+    }
+
+    private static void checkPosition(int position, int length) {
+        if (position < 0 || position > length) {
+            throw new IndexOutOfBoundsException("Позиция " + position + " за пределами текста длины " + length);
+        }
+    }
+
+    private static final class Node {
+        private final StringBuilder text;
+        private final int priority = ThreadLocalRandom.current().nextInt();
+        private Node left;
+        private Node right;
+        private int size;
+
+        private Node(StringBuilder text) {
+            this.text = text;
+            this.size = text.length();
+        }
+
+        private void update() {
+            size = size(left) + text.length() + size(right);
+        }
+    }
+}
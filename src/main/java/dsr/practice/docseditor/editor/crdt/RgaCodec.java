@@ -0,0 +1,155 @@
+package dsr.practice.docseditor.editor.crdt;
+
+import dsr.practice.docseditor.dto.CrdtId;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Бинарное представление {@link RgaDocument}: таблица клиентов и серии подряд идущих элементов одного клиента
+ * с последовательными счетчиками. Серия хранит идентификатор только первого элемента, у надгробий текст не хранится.
+ */
+public final class RgaCodec {
+    private static final byte FORMAT_VERSION = 1;
+    private static final int MAX_RUN_LENGTH = 16 * 1024;
+
+    private RgaCodec() {
+    }
+
+    public static byte[] encode(RgaDocument document) {
+        List<String> clientIds = new ArrayList<>();
+        Map<String, Integer> clientIndexes = new HashMap<>();
+        List<Run> runs = new ArrayList<>();
+
+        document.forEachRun((id, text, length, deleted, deletedAt) -> {
+            int clientIndex = clientIndexes.computeIfAbsent(id.clientId(), clientId -> {
+                clientIds.add(clientId);
+                return clientIds.size() - 1;
+            });
+            Run last = runs.isEmpty() ? null : runs.getLast();
+            if (last != null && last.continues(clientIndex, id.counter(), deleted, length)) {
+                last.add(text, length, deletedAt);
+            } else {
+                Run run = new Run(clientIndex, id.counter(), deleted);
+                run.add(text, length, deletedAt);
+                runs.add(run);
+            }
+        });
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+            writeVarLong(out, document.getClock());
+            writeVarLong(out, document.getCollectedUpTo());
+            writeVarLong(out, clientIds.size());
+            for (String clientId : clientIds) {
+                out.writeUTF(clientId);
+            }
+            writeVarLong(out, runs.size());
+            for (Run run : runs) {
+                writeVarLong(out, run.clientIndex);
+                writeVarLong(out, run.startCounter);
+                writeVarLong(out, run.length);
+                out.writeBoolean(run.deleted);
+                if (run.deleted) {
+                    writeVarLong(out, run.deletedAt);
+                } else {
+                    out.writeUTF(run.text.toString());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static RgaDocument decode(byte[] state) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(state))) {
+            byte version = in.readByte();
+            if (version != FORMAT_VERSION) {
+                throw new IllegalArgumentException("Неподдерживаемая версия состояния CRDT: " + version);
+            }
+
+            RgaDocument document = new RgaDocument();
+            long clock = readVarLong(in);
+            long collectedUpTo = readVarLong(in);
+
+            int clientCount = (int) readVarLong(in);
+            String[] clientIds = new String[clientCount];
+            for (int i = 0; i < clientCount; i++) {
+                clientIds[i] = in.readUTF();
+            }
+
+            long runCount = readVarLong(in);
+            for (long r = 0; r < runCount; r++) {
+                String clientId = clientIds[(int) readVarLong(in)];
+                long startCounter = readVarLong(in);
+                int length = (int) readVarLong(in);
+                boolean deleted = in.readBoolean();
+                long deletedAt = deleted ? readVarLong(in) : 0;
+                String text = deleted ? null : in.readUTF();
+                document.appendDecoded(new CrdtId(clientId, startCounter), text, length, deleted, deletedAt);
+            }
+            document.restoreClocks(clock, collectedUpTo);
+            return document;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Поврежденное состояние CRDT", e);
+        }
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Слишком длинное число в состоянии CRDT");
+    }
+
+    private static final class Run {
+        private final int clientIndex;
+        private final long startCounter;
+        private final boolean deleted;
+        private final StringBuilder text = new StringBuilder();
+        private int length;
+        private long deletedAt;
+
+        private Run(int clientIndex, long startCounter, boolean deleted) {
+            this.clientIndex = clientIndex;
+            this.startCounter = startCounter;
+            this.deleted = deleted;
+        }
+
+        private boolean continues(int clientIndex, long counter, boolean deleted, int added) {
+            return this.clientIndex == clientIndex && this.deleted == deleted
+                    && startCounter + length == counter && length + added <= MAX_RUN_LENGTH;
+        }
+
+        private void add(String value, int added, long deletedAt) {
+            if (!deleted) {
+                text.append(value);
+            }
+            this.deletedAt = Math.max(this.deletedAt, deletedAt);
+            length += added;
+        }
+    }
+}
@@ -0,0 +1,621 @@
+package dsr.practice.docseditor.editor.crdt;
+
+import dsr.practice.docseditor.dto.CrdtId;
+import dsr.practice.docseditor.dto.EditOperation;
+import dsr.practice.docseditor.exception.CrdtResyncRequiredException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Последовательность символов RGA: символ с идентификатором (clientId, counter) вставляется справа от своего
+ * origin. Символы хранятся сериями одного клиента с последовательными счетчиками, поэтому память растет с числом
+ * вставок, а не символов. Надгробие собирается, когда его удаление увидели все клиенты, сообщившие clock, и прошло
+ * не меньше graceMs; вставка после уже собранного origin бросает {@link CrdtResyncRequiredException}.
+ */
+public class RgaDocument {
+    public static final String SERVER_CLIENT_ID = "server";
+
+    private static final int BLOCK_SIZE = 256;
+    private static final int RUN_SIZE = 512;
+
+    private final List<Block> blocks = new ArrayList<>();
+    private final Map<String, TreeMap<Long, Run>> runsByClient = new HashMap<>();
+    private final Map<String, ClientClock> clients = new HashMap<>();
+    private final Deque<ClockSample> clockSamples = new ArrayDeque<>();
+    private long clock;
+    private long collectedUpTo;
+    private int visibleLength;
+    private int size;
+
+    public static RgaDocument fromText(String text) {
+        RgaDocument document = new RgaDocument();
+        if (text != null && !text.isEmpty()) {
+            document.appendDecoded(new CrdtId(SERVER_CLIENT_ID, 1), text, text.length(), false, 0);
+            document.clock = text.length();
+        }
+        return document;
+    }
+
+    public List<EditOperation> integrate(EditOperation operation, long now) {
+        if (operation.getClientId() != null && operation.getClock() != null) {
+            observe(operation.getClientId(), operation.getClock(), now);
+        }
+
+        return switch (operation.getType()) {
+            case "insert" -> insert(operation) ? stamped(operation) : List.of();
+            case "delete" -> delete(operation);
+            case "replace" -> replace(operation) ? stamped(operation) : List.of();
+            case null, default -> List.of();
+        };
+    }
+
+    private List<EditOperation> stamped(EditOperation operation) {
+        operation.setClock(clock);
+        return List.of(operation);
+    }
+
+    public void observe(String clientId, long seen, long now) {
+        clients.merge(clientId, new ClientClock(seen, now),
+                (current, update) -> new ClientClock(Math.max(current.seen(), update.seen()), now));
+    }
+
+    public int collectGarbage(long now, long clientTimeoutMs, long graceMs) {
+        clients.values().removeIf(client -> now - client.updatedAt() > clientTimeoutMs);
+        long graceHorizon = clockBefore(now - graceMs);
+        clockSamples.addLast(new ClockSample(now, clock));
+        long stable = Math.min(graceHorizon,
+                clients.values().stream().mapToLong(ClientClock::seen).min().orElse(graceHorizon));
+        if (stable <= collectedUpTo) {
+            return 0;
+        }
+
+        int removed = 0;
+        Run nextSurvivor = null;
+        for (int b = blocks.size() - 1; b >= 0; b--) {
+            Block block = blocks.get(b);
+            for (int i = block.runs.size() - 1; i >= 0; i--) {
+                Run run = block.runs.get(i);
+                boolean collectable = run.isDeleted() && run.deletedAt <= stable
+                        && (nextSurvivor == null || nextSurvivor.id.counter() <= stable);
+                if (collectable) {
+                    block.runs.remove(i);
+                    unindex(run);
+                    size -= run.length;
+                    removed += run.length;
+                } else {
+                    nextSurvivor = run;
+                }
+            }
+        }
+        collectedUpTo = stable;
+        if (removed > 0) {
+            rebalance();
+        }
+        return removed;
+    }
+
+    /**
+     * Значение clock на момент time по отметкам предыдущих вызовов {@link #collectGarbage}; отметки старше
+     * найденной больше не нужны и удаляются. Без подходящей отметки возвращает 0.
+     */
+    private long clockBefore(long time) {
+        ClockSample horizon = null;
+        while (!clockSamples.isEmpty() && clockSamples.peekFirst().time() <= time) {
+            horizon = clockSamples.pollFirst();
+        }
+        if (horizon == null) {
+            return 0;
+        }
+        clockSamples.addFirst(horizon);
+        return horizon.clock();
+    }
+
+    public String text() {
+        StringBuilder text = new StringBuilder(visibleLength);
+        for (Block block : blocks) {
+            for (Run run : block.runs) {
+                if (!run.isDeleted()) {
+                    text.append(run.text);
+                }
+            }
+        }
+        return text.toString();
+    }
+
+    public int length() {
+        return visibleLength;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getClock() {
+        return clock;
+    }
+
+    int runCount() {
+        int count = 0;
+        for (Block block : blocks) {
+            count += block.runs.size();
+        }
+        return count;
+    }
+
+    private boolean insert(EditOperation operation) {
+        String text = operation.getCharacter();
+        if (text == null || text.isEmpty()) {
+            return false;
+        }
+
+        CrdtId id = operation.getId();
+        Point origin;
+        if (id == null) {
+            int position = operation.getPosition();
+            if (position < 0 || position > visibleLength) {
+                return false;
+            }
+            origin = position == 0 ? null : visibleAt(position - 1);
+            id = new CrdtId(SERVER_CLIENT_ID, clock + 1);
+            operation.setId(id);
+            operation.setOrigin(origin == null ? null : origin.id());
+        } else {
+            if (find(id) != null) {
+                return false;
+            }
+            if (id.counter() <= collectedUpTo) {
+                throw new CrdtResyncRequiredException("Insert " + id + " is older than collected tombstones, resync required");
+            }
+            origin = operation.getOrigin() == null ? null : find(operation.getOrigin());
+            if (operation.getOrigin() != null && origin == null) {
+                throw new CrdtResyncRequiredException("Origin " + operation.getOrigin() + " of insert " + id
+                        + " was collected, resync required");
+            }
+        }
+
+        operation.setPosition(visibleIndexOf(insertAfter(origin, id, text)));
+        clock = Math.max(clock, id.counter() + text.length() - 1);
+        return true;
+    }
+
+    private List<EditOperation> delete(EditOperation operation) {
+        int length = operation.deletedLength();
+        List<Run> targets;
+        List<Integer> positions = new ArrayList<>();
+        if (operation.getId() == null) {
+            int position = operation.getPosition();
+            if (position < 0 || position + length > visibleLength) {
+                return List.of();
+            }
+            targets = splitVisible(position, length);
+            targets.forEach(run -> positions.add(position));
+        } else {
+            targets = splitRange(operation.getId(), length);
+            Map<Run, Integer> indexes = new HashMap<>();
+            targets.forEach(run -> indexes.put(run, visibleIndexOf(new Point(run, 0))));
+            targets.sort((left, right) -> Integer.compare(indexes.get(left), indexes.get(right)));
+            int removedBefore = 0;
+            for (Run run : targets) {
+                positions.add(indexes.get(run) - removedBefore);
+                removedBefore += run.length;
+            }
+        }
+        if (targets.isEmpty()) {
+            return List.of();
+        }
+
+        List<EditOperation> runs = new ArrayList<>();
+        EditOperation run = null;
+        for (int i = 0; i < targets.size(); i++) {
+            Run target = targets.get(i);
+            int position = positions.get(i);
+            if (run == null || run.getPosition() != position
+                    || !run.getId().plus(run.getLength()).equals(target.id)) {
+                run = operation.toBuilder().position(position).length(0).id(target.id).clock(++clock).build();
+                runs.add(run);
+            }
+            run.setLength(run.getLength() + target.length);
+            markDeleted(target, run.getClock());
+        }
+        return runs;
+    }
+
+    private boolean replace(EditOperation operation) {
+        long stamp = ++clock;
+        for (Block block : blocks) {
+            for (Run run : block.runs) {
+                if (!run.isDeleted()) {
+                    markDeleted(run, stamp);
+                }
+            }
+        }
+
+        String text = operation.getCharacter() == null ? "" : operation.getCharacter();
+        CrdtId id = new CrdtId(SERVER_CLIENT_ID, clock + 1);
+        if (!text.isEmpty()) {
+            insertAfter(null, id, text);
+        }
+        clock += text.length();
+        operation.setId(text.isEmpty() ? null : id);
+        operation.setOrigin(null);
+        operation.setPosition(0);
+        return true;
+    }
+
+    /**
+     * Размещает текст справа от origin, пропуская серии с большими идентификаторами. Внутри серии счетчики
+     * растут, поэтому если пропущен первый символ, пропускается и вся серия. Текст того же клиента, продолжающий
+     * серию origin, дописывается в нее вместо новой серии.
+     *
+     * @return позиция первого вставленного символа
+     */
+    private Point insertAfter(Point origin, CrdtId id, String text) {
+        int blockIndex = 0;
+        int index = 0;
+        boolean adjacent = false;
+        if (origin != null) {
+            Run run = origin.run();
+            int next = origin.offset() + 1;
+            if (next < run.length && run.id.plus(next).compareTo(id) < 0) {
+                split(run, next);
+            }
+            adjacent = next == run.length;
+            blockIndex = blocks.indexOf(run.block);
+            index = run.block.runs.indexOf(run) + 1;
+        }
+
+        while (blockIndex < blocks.size()) {
+            Block block = blocks.get(blockIndex);
+            if (index >= block.runs.size()) {
+                if (blockIndex == blocks.size() - 1) {
+                    break;
+                }
+                blockIndex++;
+                index = 0;
+                continue;
+            }
+            if (block.runs.get(index).id.compareTo(id) < 0) {
+                break;
+            }
+            index++;
+            adjacent = false;
+        }
+
+        if (adjacent && continuesRun(origin.run(), id, text)) {
+            Run run = origin.run();
+            int offset = run.length;
+            run.text = run.text + text;
+            run.length += text.length();
+            run.block.visible += text.length();
+            visibleLength += text.length();
+            size += text.length();
+            return new Point(run, offset);
+        }
+
+        if (blocks.isEmpty()) {
+            blocks.add(new Block());
+        }
+        Run first = null;
+        for (int start = 0; start < text.length(); start += RUN_SIZE) {
+            Run run = new Run(id.plus(start), text.substring(start, Math.min(text.length(), start + RUN_SIZE)));
+            place(blockIndex, index, run);
+            visibleLength += run.length;
+            size += run.length;
+            if (first == null) {
+                first = run;
+            }
+            blockIndex = blocks.indexOf(run.block);
+            index = run.block.runs.indexOf(run) + 1;
+        }
+        return new Point(first, 0);
+    }
+
+    private static boolean continuesRun(Run run, CrdtId id, String text) {
+        return !run.isDeleted()
+                && run.id.clientId().equals(id.clientId())
+                && run.id.counter() + run.length == id.counter()
+                && run.length + text.length() <= RUN_SIZE;
+    }
+
+    /**
+     * Делит видимые символы [position, position + count) на отдельные серии и возвращает их по порядку.
+     */
+    private List<Run> splitVisible(int position, int count) {
+        Point start = visibleAt(position);
+        Run run = start.offset() > 0 ? split(start.run(), start.offset()) : start.run();
+        List<Run> targets = new ArrayList<>();
+        int remaining = count;
+        while (true) {
+            if (!run.isDeleted()) {
+                if (run.length > remaining) {
+                    split(run, remaining);
+                }
+                targets.add(run);
+                remaining -= run.length;
+                if (remaining == 0) {
+                    return targets;
+                }
+            }
+            run = next(run);
+        }
+    }
+
+    /**
+     * Делит видимые символы клиента со счетчиками [id.counter, id.counter + count) на отдельные серии.
+     */
+    private List<Run> splitRange(CrdtId id, int count) {
+        TreeMap<Long, Run> runs = runsByClient.get(id.clientId());
+        if (runs == null) {
+            return new ArrayList<>();
+        }
+        long from = id.counter();
+        long to = from + count;
+        List<Run> candidates = new ArrayList<>();
+        Map.Entry<Long, Run> first = runs.floorEntry(from);
+        if (first != null && first.getKey() < from) {
+            candidates.add(first.getValue());
+        }
+        candidates.addAll(runs.subMap(from, true, to, false).values());
+
+        List<Run> targets = new ArrayList<>();
+        for (Run run : candidates) {
+            long start = run.id.counter();
+            if (run.isDeleted() || start + run.length <= from) {
+                continue;
+            }
+            if (start < from) {
+                run = split(run, (int) (from - start));
+                start = from;
+            }
+            if (start + run.length > to) {
+                split(run, (int) (to - start));
+            }
+            targets.add(run);
+        }
+        return targets;
+    }
+
+    /**
+     * Отделяет символы серии начиная с offset в новую серию сразу за ней.
+     *
+     * @return новая серия
+     */
+    private Run split(Run run, int offset) {
+        Run tail = new Run(run.id.plus(offset), run.isDeleted() ? null : run.text.substring(offset), run.length - offset);
+        tail.deletedAt = run.deletedAt;
+        if (!run.isDeleted()) {
+            run.text = run.text.substring(0, offset);
+        }
+        run.length = offset;
+        Block block = run.block;
+        block.visible -= tail.visible();
+        place(blocks.indexOf(block), block.runs.indexOf(run) + 1, tail);
+        return tail;
+    }
+
+    private Run next(Run run) {
+        Block block = run.block;
+        int index = block.runs.indexOf(run) + 1;
+        if (index < block.runs.size()) {
+            return block.runs.get(index);
+        }
+        return blocks.get(blocks.indexOf(block) + 1).runs.getFirst();
+    }
+
+    private void markDeleted(Run run, long stamp) {
+        run.block.visible -= run.length;
+        visibleLength -= run.length;
+        run.text = null;
+        run.deletedAt = stamp;
+    }
+
+    void appendDecoded(CrdtId id, String text, int length, boolean deleted, long deletedAt) {
+        if (deleted) {
+            Run run = new Run(id, null, length);
+            run.deletedAt = deletedAt;
+            append(run);
+            return;
+        }
+        for (int start = 0; start < length; start += RUN_SIZE) {
+            append(new Run(id.plus(start), text.substring(start, Math.min(length, start + RUN_SIZE))));
+        }
+    }
+
+    private void append(Run run) {
+        if (blocks.isEmpty() || blocks.getLast().runs.size() >= BLOCK_SIZE) {
+            blocks.add(new Block());
+        }
+        place(blocks.size() - 1, blocks.getLast().runs.size(), run);
+        visibleLength += run.visible();
+        size += run.length;
+    }
+
+    private void place(int blockIndex, int index, Run run) {
+        Block block = blocks.get(blockIndex);
+        block.runs.add(index, run);
+        run.block = block;
+        block.visible += run.visible();
+        runsByClient.computeIfAbsent(run.id.clientId(), clientId -> new TreeMap<>()).put(run.id.counter(), run);
+
+        if (block.runs.size() > 2 * BLOCK_SIZE) {
+            Block tail = new Block();
+            List<Run> moved = block.runs.subList(BLOCK_SIZE, block.runs.size());
+            for (Run movedRun : moved) {
+                movedRun.block = tail;
+                tail.runs.add(movedRun);
+                tail.visible += movedRun.visible();
+            }
+            block.visible -= tail.visible;
+            moved.clear();
+            blocks.add(blockIndex + 1, tail);
+        }
+    }
+
+    private void unindex(Run run) {
+        TreeMap<Long, Run> runs = runsByClient.get(run.id.clientId());
+        runs.remove(run.id.counter());
+        if (runs.isEmpty()) {
+            runsByClient.remove(run.id.clientId());
+        }
+    }
+
+    private Point find(CrdtId id) {
+        TreeMap<Long, Run> runs = runsByClient.get(id.clientId());
+        Map.Entry<Long, Run> entry = runs == null ? null : runs.floorEntry(id.counter());
+        if (entry == null) {
+            return null;
+        }
+        long offset = id.counter() - entry.getKey();
+        return offset < entry.getValue().length ? new Point(entry.getValue(), (int) offset) : null;
+    }
+
+    private Point visibleAt(int position) {
+        int remaining = position;
+        for (Block block : blocks) {
+            if (remaining >= block.visible) {
+                remaining -= block.visible;
+                continue;
+            }
+            for (Run run : block.runs) {
+                int visible = run.visible();
+                if (remaining < visible) {
+                    return new Point(run, remaining);
+                }
+                remaining -= visible;
+            }
+        }
+        throw new IndexOutOfBoundsException("Позиция " + position + " вне документа длиной " + visibleLength);
+    }
+
+    private int visibleIndexOf(Point target) {
+        int position = 0;
+        for (Block block : blocks) {
+            if (block != target.run().block) {
+                position += block.visible;
+                continue;
+            }
+            for (Run run : block.runs) {
+                if (run == target.run()) {
+                    return position + (run.isDeleted() ? 0 : target.offset());
+                }
+                position += run.visible();
+            }
+        }
+        throw new IllegalStateException("Серия " + target.run().id + " не найдена в документе");
+    }
+
+    /**
+     * Заново раскладывает серии по блокам после сборки надгробий, склеивая соседние серии, которые
+     * продолжают друг друга.
+     */
+    private void rebalance() {
+        List<Run> all = new ArrayList<>();
+        for (Block block : blocks) {
+            for (Run run : block.runs) {
+                Run last = all.isEmpty() ? null : all.getLast();
+                if (last != null && mergeable(last, run)) {
+                    unindex(run);
+                    last.length += run.length;
+                    if (!last.isDeleted()) {
+                        last.text = last.text + run.text;
+                    }
+                } else {
+                    all.add(run);
+                }
+            }
+        }
+        blocks.clear();
+        visibleLength = 0;
+        for (Run run : all) {
+            if (blocks.isEmpty() || blocks.getLast().runs.size() >= BLOCK_SIZE) {
+                blocks.add(new Block());
+            }
+            Block block = blocks.getLast();
+            block.runs.add(run);
+            run.block = block;
+            block.visible += run.visible();
+            visibleLength += run.visible();
+        }
+    }
+
+    private static boolean mergeable(Run left, Run right) {
+        if (!left.id.clientId().equals(right.id.clientId()) || left.id.counter() + left.length != right.id.counter()
+                || left.isDeleted() != right.isDeleted()) {
+            return false;
+        }
+        return left.isDeleted() ? left.deletedAt == right.deletedAt : left.length + right.length <= RUN_SIZE;
+    }
+
+    void forEachRun(RunVisitor visitor) {
+        for (Block block : blocks) {
+            for (Run run : block.runs) {
+                visitor.visit(run.id, run.text, run.length, run.isDeleted(), run.deletedAt);
+            }
+        }
+    }
+
+    long getCollectedUpTo() {
+        return collectedUpTo;
+    }
+
+    void restoreClocks(long clock, long collectedUpTo) {
+        this.clock = clock;
+        this.collectedUpTo = collectedUpTo;
+    }
+
+    /**
+     * Серия символов; у надгробия text равен null.
+     */
+    interface RunVisitor {
+        void visit(CrdtId id, String text, int length, boolean deleted, long deletedAt);
+    }
+
+    private record ClientClock(long seen, long updatedAt) {
+    }
+
+    private record ClockSample(long time, long clock) {
+    }
+
+    private record Point(Run run, int offset) {
+        private CrdtId id() {
+            return run.id.plus(offset);
+        }
+    }
+
+    private static final class Run {
+        private final CrdtId id;
+        private String text;
+        private int length;
+        private long deletedAt;
+        private Block block;
+
+        private Run(CrdtId id, String text) {
+            this(id, text, text.length());
+        }
+
+        private Run(CrdtId id, String text, int length) {
+            this.id = id;
+            this.text = text;
+            this.length = length;
+        }
+
+        private boolean isDeleted() {
+            return text == null;
+        }
+
+        private int visible() {
+            return text == null ? 0 : length;
+        }
+    }
+
+    private static final class Block {
+        private final List<Run> runs = new ArrayList<>();
+        private int visible;
+    }
+}
@@ -0,0 +1,190 @@
+package dsr.practice.docseditor.editor.delta;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Бинарная дельта между двумя текстами: команды COPY (фрагмент базового текста) и INSERT (новый текст в UTF-8).
+ */
+public final class TextDelta {
+    private static final byte FORMAT_VERSION = 1;
+    private static final byte COPY = 0;
+    private static final byte INSERT = 1;
+    private static final int BLOCK_SIZE = 16;
+    private static final long BASE = 1_000_003L;
+    private static final long BASE_POWER = power(BASE, BLOCK_SIZE - 1);
+
+    private TextDelta() {
+    }
+
+    /**
+     * @throws IllegalArgumentException если новый текст содержит непарный суррогат: такой текст не
+     *                                  кодируется в UTF-8 без потерь и хранится ключевым кадром
+     */
+    public static byte[] diff(String base, String target) {
+        Map<Long, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK_SIZE <= base.length(); i += BLOCK_SIZE) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+            writeVarLong(out, target.length());
+
+            int literalStart = 0;
+            int i = 0;
+            long hash = target.length() >= BLOCK_SIZE ? hash(target, 0) : 0;
+            while (i + BLOCK_SIZE <= target.length()) {
+                Integer candidate = blocks.get(hash);
+                if (candidate != null && base.regionMatches(candidate, target, i, BLOCK_SIZE)) {
+                    int start = i;
+                    int baseStart = candidate;
+                    while (start > literalStart && baseStart > 0 && target.charAt(start - 1) == base.charAt(baseStart - 1)) {
+                        start--;
+                        baseStart--;
+                    }
+                    int end = i + BLOCK_SIZE;
+                    int baseEnd = candidate + BLOCK_SIZE;
+                    while (end < target.length() && baseEnd < base.length() && target.charAt(end) == base.charAt(baseEnd)) {
+                        end++;
+                        baseEnd++;
+                    }
+                    if (start < target.length() && Character.isLowSurrogate(target.charAt(start))) {
+                        start++;
+                        baseStart++;
+                    }
+                    if (end < target.length() && Character.isLowSurrogate(target.charAt(end))) {
+                        end--;
+                    }
+
+                    if (end > start) {
+                        writeInsert(out, target, literalStart, start);
+                        out.writeByte(COPY);
+                        writeVarLong(out, baseStart);
+                        writeVarLong(out, end - start);
+                        literalStart = end;
+                        i = end;
+                        if (i + BLOCK_SIZE <= target.length()) {
+                            hash = hash(target, i);
+                        }
+                        continue;
+                    }
+                }
+
+                if (i + BLOCK_SIZE < target.length()) {
+                    hash = (hash - target.charAt(i) * BASE_POWER) * BASE + target.charAt(i + BLOCK_SIZE);
+                }
+                i++;
+            }
+            writeInsert(out, target, literalStart, target.length());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static String apply(String base, byte[] delta) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(delta))) {
+            byte version = in.readByte();
+            if (version != FORMAT_VERSION) {
+                throw new IllegalArgumentException("Неподдерживаемая версия дельты: " + version);
+            }
+
+            int length = (int) readVarLong(in);
+            StringBuilder target = new StringBuilder(length);
+            while (in.available() > 0) {
+                byte command = in.readByte();
+                if (command == COPY) {
+                    int offset = (int) readVarLong(in);
+                    int count = (int) readVarLong(in);
+                    target.append(base, offset, offset + count);
+                } else if (command == INSERT) {
+                    byte[] text = new byte[(int) readVarLong(in)];
+                    in.readFully(text);
+                    target.append(new String(text, StandardCharsets.UTF_8));
+                } else {
+                    throw new IllegalArgumentException("Неизвестная команда дельты: " + command);
+                }
+            }
+            if (target.length() != length) {
+                throw new IllegalArgumentException("Длина восстановленного текста " + target.length()
+                        + " не совпадает с ожидаемой " + length);
+            }
+            return target.toString();
+        } catch (IOException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Поврежденная дельта", e);
+        }
+    }
+
+    private static void writeInsert(DataOutputStream out, String target, int from, int to) throws IOException {
+        if (to <= from) {
+            return;
+        }
+        byte[] text = encode(target.substring(from, to));
+        out.writeByte(INSERT);
+        writeVarLong(out, text.length);
+        out.write(text);
+    }
+
+    private static byte[] encode(String text) {
+        try {
+            ByteBuffer encoded = StandardCharsets.UTF_8.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .encode(CharBuffer.wrap(text));
+            byte[] bytes = new byte[encoded.remaining()];
+            encoded.get(bytes);
+            return bytes;
+        } catch (CharacterCodingException e) {
+            throw new IllegalArgumentException("Текст содержит непарный суррогат", e);
+        }
+    }
+
+    private static long hash(String text, int from) {
+        long hash = 0;
+        for (int i = from; i < from + BLOCK_SIZE; i++) {
+            hash = hash * BASE + text.charAt(i);
+        }
+        return hash;
+    }
+
+    private static long power(long base, int exponent) {
+        long result = 1;
+        for (int i = 0; i < exponent; i++) {
+            result *= base;
+        }
+        return result;
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Слишком длинное число в дельте");
+    }
+}
@@ -0,0 +1,7 @@
+package dsr.practice.docseditor.exception;
+
+public class CrdtResyncRequiredException extends RuntimeException {
+    public CrdtResyncRequiredException(String message) {
+        super(message);
+    }
+}
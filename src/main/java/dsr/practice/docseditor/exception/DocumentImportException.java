@@ -0,0 +1,17 @@
+package dsr.practice.docseditor.exception;
+
+import dsr.practice.docseditor.dto.ImportResultDto;
+
+public class DocumentImportException extends RuntimeException {
+    private final ImportResultDto imported;
+
+    public DocumentImportException(ImportResultDto imported, Throwable cause) {
+        super("Import stopped after " + imported.getDocuments() + " documents and " + imported.getVersions()
+                + " versions: " + cause.getMessage(), cause);
+        this.imported = imported;
+    }
+
+    public ImportResultDto getImported() {
+        return imported;
+    }
+}
@@ -0,0 +1,7 @@
+package dsr.practice.docseditor.exception;
+
+public class DocumentSessionClosedException extends RuntimeException {
+    public DocumentSessionClosedException(String message) {
+        super(message);
+    }
+}
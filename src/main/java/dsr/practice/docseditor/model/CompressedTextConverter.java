@@ -0,0 +1,127 @@
+package dsr.practice.docseditor.model;
+
+import dsr.practice.docseditor.config.AppProperties;
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import lombok.RequiredArgsConstructor;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Хранит текст в колонке bytea. Сжатое значение начинается с заголовка: нулевой байт, код формата
+ * и длина исходного UTF-8 в четырех байтах, за ними поток deflate. Текст короче порога и текст,
+ * который не стал меньше после сжатия, пишутся как обычный UTF-8 без заголовка. Если такой текст
+ * сам начинается с U+0000, перед ним пишется заголовок из нулевого байта и кода RAW, иначе его
+ * нельзя отличить от сжатого. Строки, перенесенные из старой колонки TEXT, нулевых байтов не содержат
+ * и читаются без отдельного признака.
+ */
+@Converter
+@RequiredArgsConstructor
+public class CompressedTextConverter implements AttributeConverter<String, byte[]> {
+    private static final byte MARKER = 0;
+    private static final byte RAW = 0;
+    private static final byte DEFLATE = 1;
+    private static final int RAW_HEADER_SIZE = 2;
+    private static final int HEADER_SIZE = 6;
+
+    private final AppProperties appProperties;
+
+    @Override
+    public byte[] convertToDatabaseColumn(String text) {
+        if (text == null) {
+            return null;
+        }
+        byte[] raw = text.getBytes(StandardCharsets.UTF_8);
+        AppProperties.Storage storage = appProperties.getStorage();
+        if (!storage.isCompressionEnabled() || raw.length < storage.getCompressionThreshold()) {
+            return plain(raw);
+        }
+
+        byte[] compressed = deflate(raw, storage.getCompressionLevel());
+        if (compressed.length + HEADER_SIZE >= raw.length) {
+            return plain(raw);
+        }
+        return ByteBuffer.allocate(HEADER_SIZE + compressed.length)
+                .put(MARKER)
+                .put(DEFLATE)
+                .putInt(raw.length)
+                .put(compressed)
+                .array();
+    }
+
+    @Override
+    public String convertToEntityAttribute(byte[] value) {
+        if (value == null) {
+            return null;
+        }
+        if (value.length == 0 || value[0] != MARKER) {
+            return new String(value, StandardCharsets.UTF_8);
+        }
+        if (value.length >= RAW_HEADER_SIZE && value[1] == RAW) {
+            return new String(value, RAW_HEADER_SIZE, value.length - RAW_HEADER_SIZE, StandardCharsets.UTF_8);
+        }
+        if (value.length < HEADER_SIZE || value[1] != DEFLATE) {
+            throw new IllegalStateException("Неизвестный формат сжатого текста");
+        }
+
+        ByteBuffer header = ByteBuffer.wrap(value, 2, 4);
+        byte[] raw = inflate(value, HEADER_SIZE, header.getInt());
+        return new String(raw, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] plain(byte[] raw) {
+        if (raw.length == 0 || raw[0] != MARKER) {
+            return raw;
+        }
+        return ByteBuffer.allocate(RAW_HEADER_SIZE + raw.length)
+                .put(MARKER)
+                .put(RAW)
+                .put(raw)
+                .array();
+    }
+
+    private static byte[] deflate(byte[] raw, int level) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] value, int offset, int length) {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(value, offset, value.length - offset);
+            byte[] raw = new byte[length];
+            int read = 0;
+            while (read < length) {
+                int count = inflater.inflate(raw, read, length - read);
+                if (count == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                read += count;
+            }
+            if (read != length) {
+                throw new IllegalStateException("Сжатый текст поврежден: получено " + read + " байт из " + length);
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Сжатый текст поврежден", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
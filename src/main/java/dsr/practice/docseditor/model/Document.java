@@ -1,8 +1,11 @@
 package dsr.practice.docseditor.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import dsr.practice.docseditor.dto.ActiveUserDto;
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.SQLRestriction;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -10,23 +13,62 @@ import java.util.UUID;
 
 @Entity
 @Table(name = "documents")
+@DynamicUpdate
+@SQLRestriction("deleted_at is null")
 @Getter
 @Setter
 @EqualsAndHashCode
 @NoArgsConstructor
 @AllArgsConstructor
-@Builder
+@Builder(toBuilder = true)
 public class Document {
+    private static final int SNIPPET_LENGTH = 200;
+
     @Id
     @GeneratedValue(strategy = GenerationType.UUID)
     private UUID id;
     private String title;
+
+    @Convert(converter = CompressedTextConverter.class)
     private String content;
+
+    private Integer contentLength;
+    private String snippet;
+
     private UUID createdBy;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
     private Integer versionCounter;
+    private Long revision;
+
+    @Version
+    @JsonIgnore
+    private Long lockVersion;
+
+    @JsonIgnore
+    private LocalDateTime deletedAt;
+
+    @JsonIgnore
+    private byte[] crdtState;
     
     @Transient
     private List<ActiveUserDto> activeUsers;
+
+    @PrePersist
+    @PreUpdate
+    void updateSummary() {
+        contentLength = content == null ? 0 : content.length();
+        snippet = snippetOf(content);
+    }
+
+    public static String snippetOf(String content) {
+        if (content == null || content.isEmpty()) {
+            return null;
+        }
+        int end = Math.min(content.length(), SNIPPET_LENGTH);
+        if (end < content.length() && Character.isHighSurrogate(content.charAt(end - 1))) {
+            end--;
+        }
+        return content.substring(0, end);
+    }
 }
@@ -1,5 +1,6 @@
 package dsr.practice.docseditor.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.*;
 
@@ -20,9 +21,21 @@ public class DocumentVersion {
     private UUID id;
     private UUID documentId;
     private String versionName;
-    private String content;
+    private Integer sequence;
+    private Integer contentLength;
     private UUID createdBy;
     private LocalDateTime createdAt;
+
+    @JsonIgnore
+    @Column(name = "content")
+    @Convert(converter = CompressedTextConverter.class)
+    private String keyframe;
+
+    @JsonIgnore
+    private byte[] delta;
+
+    @Transient
+    private String content;
     
     @Transient
     private String authorName;
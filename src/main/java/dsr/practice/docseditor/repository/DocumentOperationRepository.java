@@ -0,0 +1,101 @@
+package dsr.practice.docseditor.repository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dsr.practice.docseditor.dto.EditOperation;
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Журнал примененных операций документа.
+ */
+@Repository
+@RequiredArgsConstructor
+public class DocumentOperationRepository {
+    private static final int BATCH_SIZE = 500;
+
+    private static final String INSERT_OPERATION = "insert into document_operations " +
+            "(document_id, revision, user_id, payload, created_at) values (?, ?, ?, cast(? as jsonb), ?) " +
+            "on conflict (document_id, revision) do nothing";
+    private static final String SELECT_OPERATIONS_AFTER = "select payload from document_operations " +
+            "where document_id = ? and revision > ? order by revision";
+    private static final String SELECT_DOCUMENTS_WITH_TAIL = "select distinct o.document_id from document_operations o " +
+            "join documents d on d.id = o.document_id where o.revision > d.revision and d.deleted_at is null";
+
+    private static final String DELETE_OPERATIONS_BATCH = "delete from document_operations where document_id = ? " +
+            "and revision in (select revision from document_operations where document_id = ? limit ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Записывает операции в журнал. Ревизия, уже занятая другой операцией, откатывает всю запись:
+     * молча пропущенная операция разошлась бы с содержимым документа.
+     */
+    @Transactional
+    public void append(UUID documentId, List<EditOperation> operations) {
+        int[][] counts = jdbcTemplate.batchUpdate(INSERT_OPERATION, operations, BATCH_SIZE, (statement, operation) -> {
+            statement.setObject(1, documentId);
+            statement.setLong(2, operation.getRevision());
+            statement.setObject(3, operation.getUserId());
+            statement.setString(4, toJson(operation));
+            statement.setTimestamp(5, toTimestamp(operation.getServerTimestamp()));
+        });
+        for (int batch = 0; batch < counts.length; batch++) {
+            for (int i = 0; i < counts[batch].length; i++) {
+                if (counts[batch][i] == 0) {
+                    long revision = operations.get(batch * BATCH_SIZE + i).getRevision();
+                    throw new DuplicateKeyException("Ревизия " + revision + " документа " + documentId
+                            + " уже есть в журнале");
+                }
+            }
+        }
+    }
+
+    public List<EditOperation> findAfter(UUID documentId, long revision) {
+        return jdbcTemplate.query(SELECT_OPERATIONS_AFTER,
+                (resultSet, rowNum) -> fromJson(resultSet.getString("payload")),
+                documentId, revision);
+    }
+
+    public List<UUID> findDocumentsWithUnsavedOperations() {
+        return jdbcTemplate.queryForList(SELECT_DOCUMENTS_WITH_TAIL, UUID.class);
+    }
+
+    public int deleteBatch(UUID documentId, int limit) {
+        return jdbcTemplate.update(DELETE_OPERATIONS_BATCH, documentId, documentId, limit);
+    }
+
+    private String toJson(EditOperation operation) {
+        try {
+            return objectMapper.writeValueAsString(operation);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Не удалось сериализовать операцию " + operation.getRevision(), e);
+        }
+    }
+
+    private EditOperation fromJson(String payload) {
+        try {
+            return objectMapper.readValue(payload, EditOperation.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Поврежденная запись журнала операций", e);
+        }
+    }
+
+    private static Timestamp toTimestamp(Long epochMillis) {
+        LocalDateTime time = epochMillis == null
+                ? LocalDateTime.now()
+                : LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+        return Timestamp.valueOf(time);
+    }
+}
@@ -1,17 +1,127 @@
 package dsr.practice.docseditor.repository;
 
+import dsr.practice.docseditor.dto.DocumentSummaryDto;
 import dsr.practice.docseditor.model.Document;
-import dsr.practice.docseditor.model.DocumentVersion;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Repository
 public interface DocumentRepository extends JpaRepository<Document, UUID> {
     Document findDocumentById(UUID id);
-    List<Document> findByCreatedBy(UUID ownerId);
     boolean existsByIdAndCreatedBy(UUID id, UUID ownerId);
 
+    /**
+     * Снимок живой сессии. lock_version не меняется: сессия упорядочивает запись по revision, а инкремент
+     * давал бы ложные конфликты параллельным изменениям метаданных документа при каждом сохранении.
+     */
+    @Modifying
+    @Transactional
+    @Query("update Document d set d.content = :content, d.contentLength = :contentLength, d.snippet = :snippet, " +
+            "d.updatedAt = :updatedAt, d.revision = :revision " +
+            "where d.id = :id and d.revision <= :revision")
+    int updateContent(@Param("id") UUID id,
+                      @Param("content") String content,
+                      @Param("contentLength") int contentLength,
+                      @Param("snippet") String snippet,
+                      @Param("updatedAt") LocalDateTime updatedAt,
+                      @Param("revision") long revision);
+
+    @Modifying
+    @Transactional
+    @Query("update Document d set d.content = :content, d.contentLength = :contentLength, d.snippet = :snippet, " +
+            "d.updatedAt = :updatedAt, d.revision = :revision, d.crdtState = :crdtState " +
+            "where d.id = :id and d.revision <= :revision")
+    int updateContentAndCrdtState(@Param("id") UUID id,
+                                  @Param("content") String content,
+                                  @Param("contentLength") int contentLength,
+                                  @Param("snippet") String snippet,
+                                  @Param("updatedAt") LocalDateTime updatedAt,
+                                  @Param("revision") long revision,
+                                  @Param("crdtState") byte[] crdtState);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "20"))
+    @Query("select d from Document d where d.createdBy = :ownerId order by d.createdAt, d.id")
+    Stream<Document> streamByOwner(@Param("ownerId") UUID ownerId);
+
+    @Modifying
+    @Transactional
+    @Query("update Document d set d.deletedAt = :deletedAt where d.id = :id and d.deletedAt is null")
+    int markDeleted(@Param("id") UUID id, @Param("deletedAt") LocalDateTime deletedAt);
+
+    @Query(value = "select id from documents where deleted_at is not null order by deleted_at limit :limit",
+            nativeQuery = true)
+    List<UUID> findDeletedIds(@Param("limit") int limit);
+
+    @Modifying
+    @Transactional
+    @Query(value = "delete from documents where id = :id and deleted_at is not null", nativeQuery = true)
+    int purgeDeleted(@Param("id") UUID id);
+
+    /**
+     * Блокирует строку документа до конца транзакции (PESSIMISTIC_WRITE без загрузки содержимого):
+     * параллельные сохранения версий одного документа назначают sequence по очереди.
+     */
+    @Query(value = "select id from documents where id = :id and deleted_at is null for update", nativeQuery = true)
+    Optional<UUID> lockForUpdate(@Param("id") UUID id);
+
+    /**
+     * Счетчик версий увеличивается на стороне БД и не меняет lock_version: инкремент не зависит
+     * от прочитанного состояния документа и не должен конфликтовать с параллельными правками.
+     */
+    @Modifying
+    @Transactional
+    @Query("update Document d set d.versionCounter = coalesce(d.versionCounter, 0) + 1, d.updatedAt = :updatedAt " +
+            "where d.id = :id")
+    int incrementVersionCounter(@Param("id") UUID id, @Param("updatedAt") LocalDateTime updatedAt);
+
+    @Modifying
+    @Transactional
+    @Query("update Document d set d.versionCounter = :versionCounter where d.id = :id")
+    int updateVersionCounter(@Param("id") UUID id, @Param("versionCounter") int versionCounter);
+
+    @Query("select new dsr.practice.docseditor.dto.DocumentSummaryDto(" +
+            "d.id, d.title, d.createdAt, d.updatedAt, d.contentLength, d.versionCounter, d.snippet) " +
+            "from Document d where d.createdBy = :ownerId " +
+            "order by d.updatedAt desc, d.id desc")
+    List<DocumentSummaryDto> findSummariesDesc(@Param("ownerId") UUID ownerId, Pageable pageable);
+
+    @Query("select new dsr.practice.docseditor.dto.DocumentSummaryDto(" +
+            "d.id, d.title, d.createdAt, d.updatedAt, d.contentLength, d.versionCounter, d.snippet) " +
+            "from Document d where d.createdBy = :ownerId " +
+            "and (d.updatedAt < :updatedAt or (d.updatedAt = :updatedAt and d.id < :id)) " +
+            "order by d.updatedAt desc, d.id desc")
+    List<DocumentSummaryDto> findSummariesBefore(@Param("ownerId") UUID ownerId,
+                                                 @Param("updatedAt") LocalDateTime updatedAt,
+                                                 @Param("id") UUID id,
+                                                 Pageable pageable);
+
+    @Query("select new dsr.practice.docseditor.dto.DocumentSummaryDto(" +
+            "d.id, d.title, d.createdAt, d.updatedAt, d.contentLength, d.versionCounter, d.snippet) " +
+            "from Document d where d.createdBy = :ownerId " +
+            "order by d.updatedAt asc, d.id asc")
+    List<DocumentSummaryDto> findSummariesAsc(@Param("ownerId") UUID ownerId, Pageable pageable);
+
+    @Query("select new dsr.practice.docseditor.dto.DocumentSummaryDto(" +
+            "d.id, d.title, d.createdAt, d.updatedAt, d.contentLength, d.versionCounter, d.snippet) " +
+            "from Document d where d.createdBy = :ownerId " +
+            "and (d.updatedAt > :updatedAt or (d.updatedAt = :updatedAt and d.id > :id)) " +
+            "order by d.updatedAt asc, d.id asc")
+    List<DocumentSummaryDto> findSummariesAfter(@Param("ownerId") UUID ownerId,
+                                                @Param("updatedAt") LocalDateTime updatedAt,
+                                                @Param("id") UUID id,
+                                                Pageable pageable);
 }
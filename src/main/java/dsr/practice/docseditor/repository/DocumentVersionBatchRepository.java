@@ -0,0 +1,42 @@
+package dsr.practice.docseditor.repository;
+
+import dsr.practice.docseditor.config.AppProperties;
+import dsr.practice.docseditor.model.CompressedTextConverter;
+import dsr.practice.docseditor.model.DocumentVersion;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * Пакетная вставка версий через JDBC для импорта.
+ */
+@Repository
+public class DocumentVersionBatchRepository {
+    private static final String INSERT_VERSION = "insert into document_versions " +
+            "(id, document_id, version_name, sequence, content_length, created_by, created_at, content, delta) " +
+            "values (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CompressedTextConverter contentConverter;
+
+    public DocumentVersionBatchRepository(JdbcTemplate jdbcTemplate, AppProperties appProperties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.contentConverter = new CompressedTextConverter(appProperties);
+    }
+
+    public void insert(List<DocumentVersion> versions) {
+        jdbcTemplate.batchUpdate(INSERT_VERSION, versions, versions.size(), (statement, version) -> {
+            statement.setObject(1, version.getId());
+            statement.setObject(2, version.getDocumentId());
+            statement.setString(3, version.getVersionName());
+            statement.setInt(4, version.getSequence());
+            statement.setInt(5, version.getContentLength());
+            statement.setObject(6, version.getCreatedBy());
+            statement.setTimestamp(7, Timestamp.valueOf(version.getCreatedAt()));
+            statement.setBytes(8, contentConverter.convertToDatabaseColumn(version.getKeyframe()));
+            statement.setBytes(9, version.getDelta());
+        });
+    }
+}
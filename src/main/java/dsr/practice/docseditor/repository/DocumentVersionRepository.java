@@ -1,16 +1,60 @@
 package dsr.practice.docseditor.repository;
 
+import dsr.practice.docseditor.dto.VersionSummaryDto;
 import dsr.practice.docseditor.model.DocumentVersion;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Repository
 public interface DocumentVersionRepository extends JpaRepository<DocumentVersion, UUID> {
-    List<DocumentVersion> getDocumentVersionsByDocumentId(UUID documentId);
+    List<DocumentVersion> findByDocumentIdOrderBySequence(UUID documentId);
+    List<DocumentVersion> findByDocumentIdAndSequenceBetweenOrderBySequence(UUID documentId, int from, int to);
+    Optional<DocumentVersion> findFirstByDocumentIdOrderBySequenceDesc(UUID documentId);
     DocumentVersion getDocumentVersionById(UUID id);
-    boolean existsByDocumentIdAndVersionName(UUID documentId, String versionName);
-    void deleteAllByDocumentId(UUID documentId);
+
+    @Query("select max(v.sequence) from DocumentVersion v " +
+            "where v.documentId = :documentId and v.sequence <= :sequence and v.delta is null")
+    Integer findKeyframeSequence(@Param("documentId") UUID documentId, @Param("sequence") int sequence);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "50"))
+    @Query("select v from DocumentVersion v where v.documentId = :documentId order by v.sequence")
+    Stream<DocumentVersion> streamByDocumentId(@Param("documentId") UUID documentId);
+
+    @Modifying
+    @Transactional
+    @Query(value = "delete from document_versions where id in " +
+            "(select id from document_versions where document_id = :documentId limit :limit)", nativeQuery = true)
+    int deleteBatchByDocumentId(@Param("documentId") UUID documentId, @Param("limit") int limit);
+
+    @Query("select new dsr.practice.docseditor.dto.VersionSummaryDto(" +
+            "v.id, v.versionName, v.createdBy, coalesce(u.username, 'Unknown'), v.createdAt, v.sequence, v.contentLength) " +
+            "from DocumentVersion v left join User u on u.id = v.createdBy " +
+            "where v.documentId = :documentId " +
+            "order by v.createdAt desc, v.sequence desc")
+    List<VersionSummaryDto> findSummaries(@Param("documentId") UUID documentId, Pageable pageable);
+
+    @Query("select new dsr.practice.docseditor.dto.VersionSummaryDto(" +
+            "v.id, v.versionName, v.createdBy, coalesce(u.username, 'Unknown'), v.createdAt, v.sequence, v.contentLength) " +
+            "from DocumentVersion v left join User u on u.id = v.createdBy " +
+            "where v.documentId = :documentId " +
+            "and (v.createdAt < :createdAt or (v.createdAt = :createdAt and v.sequence < :sequence)) " +
+            "order by v.createdAt desc, v.sequence desc")
+    List<VersionSummaryDto> findSummariesBefore(@Param("documentId") UUID documentId,
+                                                @Param("createdAt") LocalDateTime createdAt,
+                                                @Param("sequence") int sequence,
+                                                Pageable pageable);
 }
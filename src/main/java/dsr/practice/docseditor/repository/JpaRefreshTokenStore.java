@@ -0,0 +1,86 @@
+package dsr.practice.docseditor.repository;
+
+import dsr.practice.docseditor.dto.RefreshSession;
+import dsr.practice.docseditor.model.User;
+import dsr.practice.docseditor.model.UserSession;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "app.sessions", name = "store", havingValue = "jpa", matchIfMissing = true)
+public class JpaRefreshTokenStore implements RefreshTokenStore {
+    private final UserSessionRepository userSessionRepository;
+    private final UserRepository userRepository;
+
+    @Override
+    @Transactional
+    public String issue(RefreshSession session) {
+        String token = UUID.randomUUID().toString();
+        userSessionRepository.save(UserSession.builder()
+                .user(userRepository.getReferenceById(session.getUserId()))
+                .token(token)
+                .deviceInfo(session.getDeviceInfo())
+                .ipAddress(session.getIpAddress())
+                .expiresAt(session.getExpiresAt())
+                .createdAt(session.getCreatedAt())
+                .build());
+        return token;
+    }
+
+    @Override
+    @Transactional
+    public Optional<Rotation> rotate(String token, String deviceInfo, String ipAddress,
+                                     LocalDateTime createdAt, LocalDateTime expiresAt) {
+        Optional<UserSession> current = userSessionRepository.findByToken(token);
+        if (current.isEmpty()) {
+            return Optional.empty();
+        }
+        // Параллельная ротация того же токена ждет блокировки строки и удаляет 0 строк
+        if (userSessionRepository.deleteByToken(token) == 0) {
+            return Optional.empty();
+        }
+        if (current.get().getExpiresAt().isBefore(createdAt)) {
+            return Optional.empty();
+        }
+
+        User user = current.get().getUser();
+        RefreshSession next = RefreshSession.builder()
+                .userId(user.getId())
+                .username(user.getUsername())
+                .email(user.getEmail())
+                .deviceInfo(deviceInfo)
+                .ipAddress(ipAddress)
+                .createdAt(createdAt)
+                .expiresAt(expiresAt)
+                .build();
+        String newToken = UUID.randomUUID().toString();
+        userSessionRepository.save(UserSession.builder()
+                .user(user)
+                .token(newToken)
+                .deviceInfo(deviceInfo)
+                .ipAddress(ipAddress)
+                .expiresAt(expiresAt)
+                .createdAt(createdAt)
+                .build());
+        return Optional.of(new Rotation(newToken, next));
+    }
+
+    @Override
+    @Transactional
+    public void revoke(String token) {
+        userSessionRepository.deleteByToken(token);
+    }
+
+    @Override
+    @Transactional
+    public void revokeAll(UUID userId) {
+        userSessionRepository.deleteByUserId(userId);
+    }
+}
@@ -0,0 +1,208 @@
+package dsr.practice.docseditor.repository;
+
+import dsr.practice.docseditor.dto.RefreshSession;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Repository;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Refresh-токены в Redis по SHA-256 токена, срок действия задается TTL ключа. Индекс пользователя — ZSET
+ * хешей со временем истечения в score, каждая запись снимает с него истекшие хеши. Ключи пользователя содержат
+ * hash tag {userId} и лежат в одном слоте кластера. Токены имеют вид userId.random: пользователь берется
+ * из префикса, так что каждая операция — один скрипт.
+ */
+@Repository
+@RequiredArgsConstructor
+@Slf4j
+@ConditionalOnProperty(prefix = "app.sessions", name = "store", havingValue = "redis")
+public class RedisRefreshTokenStore implements RefreshTokenStore {
+    private static final String KEY_PREFIX = "refresh:";
+    private static final String TOKEN_SEPARATOR = ".";
+
+    private static final String WRITE_SESSION = """
+            redis.call('HSET', KEYS[1], 'userId', ARGV[2], 'username', ARGV[3], 'email', ARGV[4],
+                'deviceInfo', ARGV[5], 'ipAddress', ARGV[6], 'createdAt', ARGV[7], 'expiresAt', ARGV[8])
+            redis.call('PEXPIRE', KEYS[1], ARGV[9])
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+            redis.call('ZREMRANGEBYSCORE', KEYS[2], '-inf', now)
+            redis.call('ZADD', KEYS[2], now + tonumber(ARGV[9]), ARGV[1])
+            redis.call('PEXPIRE', KEYS[2], ARGV[9])
+            """;
+
+    private static final RedisScript<Long> SAVE = new DefaultRedisScript<>(
+            WRITE_SESSION + "return 1", Long.class);
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> ROTATE = new DefaultRedisScript<>("""
+            local current = redis.call('HMGET', KEYS[3], 'userId', 'username', 'email')
+            if not current[1] then
+                return nil
+            end
+            redis.call('DEL', KEYS[3])
+            redis.call('ZREM', KEYS[2], ARGV[10])
+            ARGV[2] = current[1]
+            ARGV[3] = current[2]
+            ARGV[4] = current[3]
+            """ + WRITE_SESSION + "return current", List.class);
+
+    private static final RedisScript<Long> REVOKE = new DefaultRedisScript<>("""
+            local removed = redis.call('DEL', KEYS[1])
+            redis.call('ZREM', KEYS[2], ARGV[1])
+            return removed
+            """, Long.class);
+
+    /**
+     * Хеши читаются внутри скрипта, поэтому токен, выданный во время отзыва, не остается действующим.
+     * Ключи токенов собираются из префикса ARGV[1] и благодаря hash tag лежат в слоте KEYS[1].
+     */
+    private static final RedisScript<Long> REVOKE_ALL = new DefaultRedisScript<>("""
+            local hashes = redis.call('ZRANGE', KEYS[1], 0, -1)
+            local removed = 0
+            for i = 1, #hashes do
+                removed = removed + redis.call('DEL', ARGV[1] .. hashes[i])
+            end
+            redis.call('DEL', KEYS[1])
+            return removed
+            """, Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    @Override
+    public String issue(RefreshSession session) {
+        String token = newToken(session.getUserId());
+        String hash = hash(token);
+        String userId = session.getUserId().toString();
+        stringRedisTemplate.execute(SAVE, List.of(tokenKey(userId, hash), userKey(userId)), sessionArgs(hash, session));
+        return token;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Optional<Rotation> rotate(String token, String deviceInfo, String ipAddress,
+                                     LocalDateTime createdAt, LocalDateTime expiresAt) {
+        Optional<UUID> owner = ownerOf(token);
+        if (owner.isEmpty()) {
+            return Optional.empty();
+        }
+        String userId = owner.get().toString();
+        String newToken = newToken(owner.get());
+        String hash = hash(newToken);
+        String previousHash = hash(token);
+
+        RefreshSession next = RefreshSession.builder()
+                .deviceInfo(deviceInfo)
+                .ipAddress(ipAddress)
+                .createdAt(createdAt)
+                .expiresAt(expiresAt)
+                .build();
+
+        Object[] args = sessionArgs(hash, next);
+        Object[] rotateArgs = new Object[args.length + 1];
+        System.arraycopy(args, 0, rotateArgs, 0, args.length);
+        rotateArgs[args.length] = previousHash;
+
+        List<String> user = stringRedisTemplate.execute(ROTATE,
+                List.of(tokenKey(userId, hash), userKey(userId), tokenKey(userId, previousHash)), rotateArgs);
+        if (user == null || user.isEmpty()) {
+            return Optional.empty();
+        }
+
+        next.setUserId(UUID.fromString(user.get(0)));
+        next.setUsername(fromArg(user.get(1)));
+        next.setEmail(fromArg(user.get(2)));
+        return Optional.of(new Rotation(newToken, next));
+    }
+
+    @Override
+    public void revoke(String token) {
+        ownerOf(token).ifPresent(owner -> {
+            String hash = hash(token);
+            String userId = owner.toString();
+            stringRedisTemplate.execute(REVOKE, List.of(tokenKey(userId, hash), userKey(userId)), hash);
+        });
+    }
+
+    @Override
+    public void revokeAll(UUID userId) {
+        String user = userId.toString();
+        Long revoked = stringRedisTemplate.execute(REVOKE_ALL, List.of(userKey(user)), tokenKey(user, ""));
+        log.info("Отозвано refresh-токенов пользователя {}: {}", userId, revoked);
+    }
+
+    private static String newToken(UUID userId) {
+        return userId + TOKEN_SEPARATOR + UUID.randomUUID();
+    }
+
+    /**
+     * Пользователь из префикса токена. Пусто для токенов другого формата.
+     */
+    private static Optional<UUID> ownerOf(String token) {
+        int separator = token == null ? -1 : token.indexOf(TOKEN_SEPARATOR);
+        if (separator <= 0) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(UUID.fromString(token.substring(0, separator)));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static String tokenKey(String userId, String hash) {
+        return KEY_PREFIX + "{" + userId + "}:token:" + hash;
+    }
+
+    private static String userKey(String userId) {
+        return KEY_PREFIX + "{" + userId + "}:tokens";
+    }
+
+    private static Duration ttl(RefreshSession session) {
+        return Duration.ofMillis(Math.max(1, Duration.between(LocalDateTime.now(), session.getExpiresAt()).toMillis()));
+    }
+
+    private static Object[] sessionArgs(String hash, RefreshSession session) {
+        return new Object[]{
+                hash,
+                session.getUserId() == null ? "" : session.getUserId().toString(),
+                toArg(session.getUsername()),
+                toArg(session.getEmail()),
+                toArg(session.getDeviceInfo()),
+                toArg(session.getIpAddress()),
+                session.getCreatedAt().toString(),
+                session.getExpiresAt().toString(),
+                String.valueOf(ttl(session).toMillis())
+        };
+    }
+
+    private static String toArg(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static String fromArg(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    private static String hash(String token) {
+        try {
+            return HexFormat.of().formatHex(
+                    MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package dsr.practice.docseditor.repository;
+
+import dsr.practice.docseditor.dto.RefreshSession;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Хранилище refresh-токенов. Реализация выбирается свойством app.sessions.store: jpa (таблица
+ * user_sessions, по умолчанию) или redis. Формат токена определяет реализация.
+ */
+public interface RefreshTokenStore {
+
+    /**
+     * Выпускает новый refresh-токен для сессии и возвращает его.
+     */
+    String issue(RefreshSession session);
+
+    /**
+     * Атомарно заменяет действующий token новым с теми же данными пользователя.
+     * Пусто, если token не найден или истек.
+     */
+    Optional<Rotation> rotate(String token, String deviceInfo, String ipAddress,
+                              LocalDateTime createdAt, LocalDateTime expiresAt);
+
+    void revoke(String token);
+
+    /**
+     * Отзывает все refresh-токены пользователя (выход на всех устройствах).
+     */
+    void revokeAll(UUID userId);
+
+    record Rotation(String token, RefreshSession session) {
+    }
+}
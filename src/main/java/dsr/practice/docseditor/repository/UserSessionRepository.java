@@ -2,10 +2,29 @@ package dsr.practice.docseditor.repository;
 
 import dsr.practice.docseditor.model.UserSession;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.Optional;
+import java.util.UUID;
 
 public interface UserSessionRepository extends JpaRepository<UserSession, Integer> {
     Optional<UserSession> findByToken(String token);
-    void deleteByToken(String token);
+
+    @Modifying
+    @Query("delete from UserSession s where s.token = :token")
+    int deleteByToken(@Param("token") String token);
+
+    @Modifying
+    @Query("delete from UserSession s where s.user.id = :userId")
+    int deleteByUserId(@Param("userId") UUID userId);
+
+    @Modifying
+    @Transactional
+    @Query(value = "delete from user_sessions where session_id in " +
+            "(select session_id from user_sessions where expires_at < :now limit :limit)", nativeQuery = true)
+    int deleteExpiredBatch(@Param("now") LocalDateTime now, @Param("limit") int limit);
 }
@@ -1,79 +1,97 @@
 package dsr.practice.docseditor.security;
 
+import io.jsonwebtoken.Claims;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.stomp.StompCommand;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
-import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
 import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.security.authentication.CredentialsExpiredException;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
+import java.util.Map;
 
+/**
+ * Аутентификация STOMP-кадров. Токен проверяется один раз, личность хранится в атрибутах WebSocket-сессии
+ * до истечения exp; после этого кадр без свежего токена отклоняется. Обработчики выполняются в пуле
+ * clientInboundChannel, поэтому контекст безопасности ставится для каждого кадра в потоке обработчика
+ * и очищается после него. Контекст неизменяемый и создается один раз вместе с личностью сессии.
+ */
 @Component
 @RequiredArgsConstructor
 @Slf4j
-public class AuthenticationInterceptor implements ChannelInterceptor {
+public class AuthenticationInterceptor implements ExecutorChannelInterceptor {
+    static final String IDENTITY_ATTRIBUTE = "stompIdentity";
+    static final String EXPIRED_ATTRIBUTE = "stompIdentityExpired";
+    private static final String HANDSHAKE_TOKEN_ATTRIBUTE = "token";
+
     private final JwtTokenProvider jwtTokenProvider;
 
     @Override
     public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        Map<String, Object> sessionAttributes = SimpMessageHeaderAccessor.getSessionAttributes(message.getHeaders());
+        if (sessionAttributes != null
+                && sessionAttributes.get(IDENTITY_ATTRIBUTE) instanceof StompIdentity identity) {
+            if (identity.expiresAt() > System.currentTimeMillis()) {
+                return message;
+            }
+            sessionAttributes.remove(IDENTITY_ATTRIBUTE);
+            sessionAttributes.remove(HANDSHAKE_TOKEN_ATTRIBUTE);
+            sessionAttributes.put(EXPIRED_ATTRIBUTE, Boolean.TRUE);
+            log.warn("WebSocket: срок действия токена пользователя {} истек", identity.username());
+        }
+
         StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
-        
         if (accessor == null) {
             log.warn("WebSocket: StompHeaderAccessor is null");
             return message;
         }
 
-        if (accessor.getUser() != null) {
-            log.debug("WebSocket: User already authenticated as {}", accessor.getUser().getName());
-            if (accessor.getUser() instanceof Authentication) {
-                SecurityContextHolder.getContext().setAuthentication((Authentication) accessor.getUser());
-            }
-            return message;
-        }
-
         if (accessor.getCommand() == null) {
             log.warn("WebSocket: Command is null");
             return message;
         }
 
         log.debug("WebSocket {} command received", accessor.getCommand());
-        
-        String token = extractToken(accessor);
+
+        String token = extractToken(accessor, sessionAttributes);
         if (token != null) {
-            try {
-                log.debug("WebSocket: Token found, attempting authentication");
-                Authentication auth = jwtTokenProvider.getAuthentication(token);
-                if (auth != null) {
-                    SecurityContextHolder.getContext().setAuthentication(auth);
-                    accessor.setUser(auth);
-                    
-                    if (StompCommand.CONNECT.equals(accessor.getCommand())) {
-                        log.debug("WebSocket CONNECT: аутентификация установлена для {}", auth.getName());
-                    } else if (StompCommand.SUBSCRIBE.equals(accessor.getCommand())) {
-                        log.debug("WebSocket SUBSCRIBE: {} подписался на {}", 
-                                auth.getName(), accessor.getDestination());
-                    } else if (StompCommand.SEND.equals(accessor.getCommand())) {
-                        log.debug("WebSocket SEND: {} отправляет сообщение на {}", 
-                                auth.getName(), accessor.getDestination());
-                    }
-                } else {
-                    log.warn("WebSocket: Authentication failed, token is invalid");
+            StompIdentity identity = resolveIdentity(token);
+            if (identity != null) {
+                if (sessionAttributes != null) {
+                    sessionAttributes.put(IDENTITY_ATTRIBUTE, identity);
+                    sessionAttributes.remove(EXPIRED_ATTRIBUTE);
+                }
+                if (accessor.getUser() == null) {
+                    accessor.setUser(identity.context().getAuthentication());
+                }
+
+                if (StompCommand.CONNECT.equals(accessor.getCommand())) {
+                    log.debug("WebSocket CONNECT: аутентификация установлена для {}", identity.username());
                 }
-            } catch (Exception e) {
-                log.error("Ошибка аутентификации WebSocket: {}", e.getMessage());
+            } else {
+                log.warn("WebSocket: Authentication failed, token is invalid");
+                rejectIfExpired(sessionAttributes);
             }
+        } else if (sessionAttributes != null && sessionAttributes.containsKey(EXPIRED_ATTRIBUTE)) {
+            rejectIfExpired(sessionAttributes);
+        } else if (accessor.getUser() instanceof Authentication authentication) {
+            log.debug("WebSocket: User already authenticated as {}", authentication.getName());
         } else if (StompCommand.CONNECT.equals(accessor.getCommand())) {
             log.warn("WebSocket CONNECT без токена авторизации");
             accessor.getMessageHeaders().forEach((key, value) -> {
                 log.debug("WebSocket header: {} = {}", key, value);
             });
-            
+
             List<String> nativeHeaders = accessor.getNativeHeader("Authorization");
             if (nativeHeaders != null) {
                 log.debug("Authorization headers: {}", nativeHeaders);
@@ -81,11 +99,68 @@ public class AuthenticationInterceptor implements ChannelInterceptor {
                 log.debug("No Authorization headers found");
             }
         }
-        
+
+        return message;
+    }
+
+    @Override
+    public void afterSendCompletion(Message<?> message, MessageChannel channel, boolean sent, Exception ex) {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Override
+    public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+        SecurityContext context = contextOf(message);
+        if (context != null) {
+            SecurityContextHolder.setContext(context);
+        } else {
+            SecurityContextHolder.clearContext();
+        }
         return message;
     }
-    
-    private String extractToken(StompHeaderAccessor accessor) {
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+        SecurityContextHolder.clearContext();
+    }
+
+    /**
+     * Контекст кадра: контекст действующей личности сессии, а без нее - пользователь, которого
+     * STOMP-обработчик проставил кадру после CONNECT.
+     */
+    private static SecurityContext contextOf(Message<?> message) {
+        Map<String, Object> sessionAttributes = SimpMessageHeaderAccessor.getSessionAttributes(message.getHeaders());
+        if (sessionAttributes != null && sessionAttributes.get(IDENTITY_ATTRIBUTE) instanceof StompIdentity identity
+                && identity.expiresAt() > System.currentTimeMillis()) {
+            return identity.context();
+        }
+        if (sessionAttributes != null && sessionAttributes.containsKey(EXPIRED_ATTRIBUTE)) {
+            return null;
+        }
+        return SimpMessageHeaderAccessor.getUser(message.getHeaders()) instanceof Authentication authentication
+                ? new FixedSecurityContext(authentication)
+                : null;
+    }
+
+    private static void rejectIfExpired(Map<String, Object> sessionAttributes) {
+        if (sessionAttributes != null && sessionAttributes.containsKey(EXPIRED_ATTRIBUTE)) {
+            throw new CredentialsExpiredException("WebSocket token expired, reconnect with a new token");
+        }
+    }
+
+    private StompIdentity resolveIdentity(String token) {
+        try {
+            Claims claims = jwtTokenProvider.verify(token);
+            Authentication authentication = jwtTokenProvider.getAuthentication(claims);
+            return new StompIdentity(authentication.getName(), new FixedSecurityContext(authentication),
+                    claims.getExpiration().getTime());
+        } catch (Exception e) {
+            log.error("Ошибка аутентификации WebSocket: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private String extractToken(StompHeaderAccessor accessor, Map<String, Object> sessionAttributes) {
         String authorization = accessor.getFirstNativeHeader("Authorization");
         if (authorization != null && authorization.startsWith("Bearer ")) {
             log.debug("Token found in first native header: {}", authorization.substring(0, 15) + "...");
@@ -100,8 +175,35 @@ public class AuthenticationInterceptor implements ChannelInterceptor {
                 return authParam.substring(7);
             }
         }
-        
+
+        if (sessionAttributes != null && sessionAttributes.get(HANDSHAKE_TOKEN_ATTRIBUTE) instanceof String token) {
+            log.debug("Token found in handshake attributes");
+            return token;
+        }
+
         log.debug("No token found in headers");
         return null;
     }
-} 
\ No newline at end of file
+
+    /**
+     * Личность пользователя WebSocket-сессии: контекст с аутентификацией собирается один раз и переиспользуется
+     * для всех кадров до истечения токена.
+     */
+    record StompIdentity(String username, SecurityContext context, long expiresAt) {
+    }
+
+    /**
+     * Контекст, общий для кадров одной сессии в разных потоках пула, поэтому его нельзя изменить.
+     */
+    private record FixedSecurityContext(Authentication authentication) implements SecurityContext {
+        @Override
+        public Authentication getAuthentication() {
+            return authentication;
+        }
+
+        @Override
+        public void setAuthentication(Authentication authentication) {
+            throw new UnsupportedOperationException("STOMP security context is shared by session frames");
+        }
+    }
+}
@@ -1,82 +1,152 @@
 package dsr.practice.docseditor.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import dsr.practice.docseditor.config.AppProperties;
+import dsr.practice.docseditor.dto.RefreshSession;
 import dsr.practice.docseditor.model.User;
-import dsr.practice.docseditor.model.UserSession;
-import dsr.practice.docseditor.repository.UserSessionRepository;
+import dsr.practice.docseditor.repository.RefreshTokenStore;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
 import io.jsonwebtoken.security.SignatureException;
-import lombok.RequiredArgsConstructor;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.stereotype.Service;
 
+import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.Base64;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
 import java.util.function.Function;
 
+/**
+ * Выпуск и проверка токенов. Проверенные claims кешируются по SHA-256 токена до истечения его срока.
+ * Токены подписываются текущим ключом с заголовком kid, ключи из app.jwt.verification-keys принимаются при проверке.
+ */
 @Service
-@RequiredArgsConstructor
 public class JwtTokenProvider {
+    public static final String USER_ID_CLAIM = "uid";
+
     private final AppProperties appProperties;
-    private final UserSessionRepository userSessionRepository;
+    private final RefreshTokenStore refreshTokenStore;
     private final UserDetailsService userDetailsService;
+    private final Cache<String, Claims> verifiedClaims;
+    private final Cache<Claims, UserDetails> legacyPrincipals;
+    private final String keyId;
+    private final SecretKey signingKey;
+    private final Map<String, SecretKey> verificationKeys;
+    private final JwtParser jwtParser;
+
+    public JwtTokenProvider(AppProperties appProperties, RefreshTokenStore refreshTokenStore,
+                            UserDetailsService userDetailsService) {
+        this.appProperties = appProperties;
+        this.refreshTokenStore = refreshTokenStore;
+        this.userDetailsService = userDetailsService;
+        this.verifiedClaims = Caffeine.newBuilder()
+                .maximumSize(appProperties.getJwt().getClaimsCacheSize())
+                .expireAfter(Expiry.creating((String key, Claims claims) -> untilExpiration(claims)))
+                .build();
+        this.legacyPrincipals = Caffeine.newBuilder()
+                .maximumSize(appProperties.getJwt().getClaimsCacheSize())
+                .expireAfter(Expiry.creating((Claims claims, UserDetails principal) -> untilExpiration(claims)))
+                .build();
+
+        AppProperties.Jwt jwt = appProperties.getJwt();
+        this.keyId = jwt.getKeyId();
+        this.signingKey = secretKey(jwt.getSecret());
+        Map<String, SecretKey> keys = new HashMap<>();
+        jwt.getVerificationKeys().forEach((id, secret) -> keys.put(id, secretKey(secret)));
+        keys.put(keyId, signingKey);
+        this.verificationKeys = Map.copyOf(keys);
+        this.jwtParser = Jwts.parserBuilder()
+                .setSigningKeyResolver(new SigningKeyResolverAdapter() {
+                    @Override
+                    public Key resolveSigningKey(JwsHeader header, Claims claims) {
+                        return resolveKey(header.getKeyId());
+                    }
+                })
+                .build();
+    }
 
     public String generateAccessToken(User user) {
         return Jwts.builder()
+                .setHeaderParam(JwsHeader.KEY_ID, keyId)
                 .setSubject(user.getUsername())
+                .claim(USER_ID_CLAIM, user.getId().toString())
                 .claim("email", user.getEmail())
                 .setIssuedAt(new Date())
                 .setExpiration(new Date(System.currentTimeMillis() + appProperties.getJwt().getAccessTokenExpiresMs()))
-                .signWith(Keys.hmacShaKeyFor(appProperties.getJwt().getSecret().getBytes()), SignatureAlgorithm.HS256)
+                .signWith(signingKey, SignatureAlgorithm.HS256)
                 .compact();
     }
 
     public String generateRefreshToken(User user, String deviceInfo, String ipAdress) {
-        String token = UUID.randomUUID().toString();
+        LocalDateTime now = LocalDateTime.now();
 
-        UserSession userSession = UserSession.builder()
-                .user(user)
-                .token(token)
+        return refreshTokenStore.issue(RefreshSession.builder()
+                .userId(user.getId())
+                .username(user.getUsername())
+                .email(user.getEmail())
                 .deviceInfo(deviceInfo)
                 .ipAddress(ipAdress)
-                .expiresAt(LocalDateTime.now().plusSeconds(appProperties.getJwt().getRefreshTokenExpiresMs() / 1000))
-                .createdAt(LocalDateTime.now())
-                .build();
+                .expiresAt(refreshTokenExpiresAt(now))
+                .createdAt(now)
+                .build());
+    }
 
-        userSessionRepository.save(userSession);
+    public LocalDateTime refreshTokenExpiresAt(LocalDateTime issuedAt) {
+        return issuedAt.plusSeconds(appProperties.getJwt().getRefreshTokenExpiresMs() / 1000);
+    }
+
+    /**
+     * Проверяет подпись и срок действия токена и возвращает его claims. Исключения jjwt пробрасываются
+     * как есть, неудачные проверки не кешируются.
+     */
+    public Claims verify(String token) {
+        String key = hash(token);
+        Claims claims = verifiedClaims.getIfPresent(key);
+        if (claims != null && isTokenActive(claims)) {
+            return claims;
+        }
 
-        return token;
+        claims = getAllClaimsFromToken(token);
+        if (claims.getExpiration() == null) {
+            throw new MalformedJwtException("Токен не содержит срока действия");
+        }
+        verifiedClaims.put(key, claims);
+        return claims;
+    }
+
+    public boolean validateToken(Claims claims, UserDetails userDetails) {
+        return claims.getSubject().equals(userDetails.getUsername()) && isTokenActive(claims);
     }
 
     public boolean validateToken(String token, UserDetails userDetails) {
-        final String username = extractUserName(token);
-        return (username.equals(userDetails.getUsername()) && isTokenActive(token));
+        return validateToken(verify(token), userDetails);
     }
 
     public boolean validateToken(String token) throws SignatureException, MalformedJwtException,
             ExpiredJwtException, UnsupportedJwtException,
             IllegalArgumentException {
-        JwtParser jwtParser = Jwts.parserBuilder()
-                .setSigningKey(Keys.hmacShaKeyFor(appProperties.getJwt().getSecret().getBytes()))
-                .build();
-
-        jwtParser.parseClaimsJws(token);
-        return isTokenActive(token);
+        return isTokenActive(verify(token));
     }
 
     public Authentication getAuthentication(String token) {
         try {
-            if (validateToken(token)) {
-                String username = extractUserName(token);
-                UserDetails userDetails = userDetailsService.loadUserByUsername(username);
-                return new UsernamePasswordAuthenticationToken(
-                        userDetails, "", userDetails.getAuthorities());
+            Claims claims = verify(token);
+            if (isTokenActive(claims)) {
+                return getAuthentication(claims);
             }
         } catch (Exception e) {
             return null;
@@ -84,27 +154,64 @@ public class JwtTokenProvider {
         return null;
     }
 
-    private boolean isTokenActive(String token) {
-        final Date expiration = getExpirationDateFromToken(token);
-        return !expiration.before(new Date());
+    /**
+     * Аутентификация по уже проверенным claims. Пользователь берется из claims; в базу обращаются
+     * только за токенами, выпущенными до появления claim uid, и только при первом их предъявлении.
+     */
+    public UsernamePasswordAuthenticationToken getAuthentication(Claims claims) {
+        UserDetails userDetails = toPrincipal(claims);
+        return new UsernamePasswordAuthenticationToken(userDetails, "", userDetails.getAuthorities());
     }
-    public String extractUserName(String token) {
-        return getClaimFromToken(token, Claims::getSubject);
+
+    private UserDetails toPrincipal(Claims claims) {
+        String userId = claims.get(USER_ID_CLAIM, String.class);
+        if (userId == null) {
+            return legacyPrincipals.get(claims, legacy -> userDetailsService.loadUserByUsername(legacy.getSubject()));
+        }
+        return new UserPrincipal(UUID.fromString(userId), claims.getSubject(), null);
     }
-    private Date getExpirationDateFromToken(String token) {
-        return getClaimFromToken(token, Claims::getExpiration);
+
+    private boolean isTokenActive(Claims claims) {
+        return !claims.getExpiration().before(new Date());
+    }
+
+    public String extractUserName(String token) {
+        return verify(token).getSubject();
     }
 
     public <T> T getClaimFromToken(String token, Function<Claims, T> claimsResolver) {
-        final Claims claims = getAllClaimsFromToken(token);
-        return claimsResolver.apply(claims);
+        return claimsResolver.apply(verify(token));
+    }
+
+    private static Duration untilExpiration(Claims claims) {
+        return Duration.ofMillis(Math.max(0, claims.getExpiration().getTime() - System.currentTimeMillis()));
     }
 
     private Claims getAllClaimsFromToken(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(Keys.hmacShaKeyFor(appProperties.getJwt().getSecret().getBytes(StandardCharsets.UTF_8)))
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        return jwtParser.parseClaimsJws(token).getBody();
+    }
+
+    private Key resolveKey(String kid) {
+        if (kid == null) {
+            return signingKey;
+        }
+        SecretKey key = verificationKeys.get(kid);
+        if (key == null) {
+            throw new SignatureException("Неизвестный ключ подписи: " + kid);
+        }
+        return key;
+    }
+
+    private static SecretKey secretKey(String secret) {
+        return Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e);
+        }
     }
 }
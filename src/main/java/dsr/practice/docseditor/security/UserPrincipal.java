@@ -0,0 +1,32 @@
+package dsr.practice.docseditor.security;
+
+import dsr.practice.docseditor.model.User;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.UUID;
+
+/**
+ * Аутентифицированный пользователь вместе с его id. Для запросов с access-токеном собирается из claims
+ * без обращения к базе, пароль в этом случае не заполнен.
+ */
+@Getter
+@AllArgsConstructor
+public class UserPrincipal implements UserDetails {
+    private final UUID id;
+    private final String username;
+    private final String password;
+
+    public static UserPrincipal of(User user) {
+        return new UserPrincipal(user.getId(), user.getUsername(), user.getPasswordHash());
+    }
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return Collections.emptyList();
+    }
+}
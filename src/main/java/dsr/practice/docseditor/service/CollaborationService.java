@@ -3,12 +3,14 @@ package dsr.practice.docseditor.service;
 import dsr.practice.docseditor.dto.ActiveUserDto;
 import dsr.practice.docseditor.dto.DocumentUpdateRequest;
 import dsr.practice.docseditor.dto.EditOperation;
+import dsr.practice.docseditor.editor.DocumentSession;
 import dsr.practice.docseditor.model.Document;
-import dsr.practice.docseditor.repository.DocumentRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
 
 import java.time.LocalDateTime;
 import java.util.*;
@@ -17,16 +19,48 @@ import java.util.*;
 @RequiredArgsConstructor
 @Slf4j
 public class CollaborationService {
-    private final DocumentRepository documentRepository;
+    private final DocumentSessionService documentSessionService;
     private final SimpMessagingTemplate messagingTemplate;
     private final RedisCollaborationService redisCollaborationService;
+    private final OperationBroadcastService operationBroadcastService;
     
-    public synchronized boolean connectUserToDocument(UUID documentId, UUID userId) {
+    public boolean connectUserToDocument(UUID documentId, UUID userId, String connectionId) {
+        documentSessionService.acquire(documentId, userId, connectionId);
         return redisCollaborationService.connectUserToDocument(documentId, userId);
     }
 
-    public synchronized void disconnectUserFromDocument(UUID documentId, UUID userId) {
-        redisCollaborationService.disconnectUserFromDocument(documentId, userId);
+    /**
+     * Отключает STOMP-сессию от документа. Пользователь пропадает из активных, только когда закрыто
+     * его последнее подключение к документу.
+     *
+     * @return id пользователя, покинувшего документ
+     */
+    public Optional<UUID> disconnectUserFromDocument(UUID documentId, String connectionId) {
+        Optional<UUID> departed = documentSessionService.release(documentId, connectionId);
+        departed.ifPresent(userId -> redisCollaborationService.disconnectUserFromDocument(documentId, userId));
+        return departed;
+    }
+
+    /**
+     * Оборванное соединение (закрытая вкладка, потеря сети) отключается от всех открытых им документов,
+     * иначе сессии документов остались бы в памяти навсегда.
+     */
+    @EventListener
+    public void handleSessionDisconnect(SessionDisconnectEvent event) {
+        String connectionId = event.getSessionId();
+        String username = event.getUser() != null ? event.getUser().getName() : null;
+        for (UUID documentId : documentSessionService.findDocumentsOf(connectionId)) {
+            try {
+                disconnectUserFromDocument(documentId, connectionId).ifPresent(userId -> {
+                    notifyUserLeft(documentId, userId, username);
+                    messagingTemplate.convertAndSend("/topic/documents/" + documentId + "/active-users",
+                            getActiveUsersList(documentId));
+                });
+                log.debug("Соединение {} закрыто, отключено от документа {}", connectionId, documentId);
+            } catch (Exception e) {
+                log.error("Ошибка при отключении соединения {} от документа {}: {}", connectionId, documentId, e.getMessage(), e);
+            }
+        }
     }
 
     public List<ActiveUserDto> getActiveUsers(UUID documentId, UUID currentUserId) {
@@ -41,137 +75,76 @@ public class CollaborationService {
         redisCollaborationService.updateUserState(documentId, userId, cursorPosition, isTyping);
     }
 
-    public Document handleDocumentUpdate(UUID documentId, DocumentUpdateRequest updateRequest, UUID userId) {
-        Document document = documentRepository.findDocumentById(documentId);
-        
-        if (document == null) {
-            log.error("Документ с ID {} не найден", documentId);
-            throw new RuntimeException("Документ не найден");
+    public DocumentSessionService.AppliedUpdate handleDocumentUpdate(UUID documentId, DocumentUpdateRequest updateRequest,
+                                                                   UUID userId) {
+        DocumentSessionService.AppliedUpdate update = documentSessionService.execute(documentId,
+                session -> applyUpdate(session, updateRequest, userId));
+        if (!update.operations().isEmpty()) {
+            registerUserActivity(documentId, userId);
         }
+        return update;
+    }
 
-        if (updateRequest.getLastKnownUpdate() != null && 
-            document.getUpdatedAt().isAfter(updateRequest.getLastKnownUpdate())) {
-
-            long timeDifferenceSeconds = java.time.Duration.between(
-                updateRequest.getLastKnownUpdate(), 
-                document.getUpdatedAt()
-            ).getSeconds();
-
-            long timeDifferenceMillis = java.time.Duration.between(
-                updateRequest.getLastKnownUpdate(), 
-                document.getUpdatedAt()
-            ).toMillis();
-            
-            log.debug("Время клиента: {}, Время сервера: {}, Разница: {} сек ({} мс)", 
-                updateRequest.getLastKnownUpdate(), document.getUpdatedAt(), 
-                timeDifferenceSeconds, timeDifferenceMillis);
-
-            if (timeDifferenceSeconds > 3) {
-                log.info("Обнаружен конфликт версий документа {}. Клиент: {}, Последнее известное обновление клиента: {}, Текущее обновление сервера: {}, Разница: {} сек", 
-                        documentId, updateRequest.getClientId(), updateRequest.getLastKnownUpdate(), document.getUpdatedAt(), timeDifferenceSeconds);
-                
-                notifyClientAboutConflict(documentId, document, updateRequest.getClientId());
-                
-                return document;
-            } else {
-                log.debug("Игнорируем незначительное расхождение версий ({} сек) для документа {}. Клиент: {}", 
-                        timeDifferenceSeconds, documentId, updateRequest.getClientId());
-            }
-        }
+    public Document getResyncState(UUID documentId, UUID userId) {
+        return documentSessionService.execute(documentId, session -> {
+            operationBroadcastService.flush(documentId);
+            return session.toDocument(session.getContent().toString());
+        });
+    }
 
-        String newContent = document.getContent();
-        LocalDateTime updateTime = LocalDateTime.now();
-        
-        if (updateRequest.getOperations() != null && !updateRequest.getOperations().isEmpty()) {
-            List<EditOperation> confirmedOperations = new ArrayList<>();
-            
+    private DocumentSessionService.AppliedUpdate applyUpdate(DocumentSession session, DocumentUpdateRequest updateRequest,
+                                                             UUID userId) {
+        if (updateRequest.getOperations() != null) {
             for (EditOperation operation : updateRequest.getOperations()) {
-                operation.setServerTimestamp(System.currentTimeMillis());
                 operation.setUserId(userId);
-
-                try {
-                    switch (operation.getType()) {
-                        case "insert" -> {
-                            if (operation.getPosition() >= 0 && operation.getPosition() <= newContent.length()) {
-                                newContent = newContent.substring(0, operation.getPosition()) +
-                                        operation.getCharacter() +
-                                        newContent.substring(operation.getPosition());
-                                confirmedOperations.add(operation);
-                            } else {
-                                log.warn("Неверный индекс для операции вставки: {}", operation.getPosition());
-                            }
-                        }
-                        case "delete" -> {
-                            if (operation.getPosition() >= 0 && operation.getPosition() < newContent.length()) {
-                                newContent = newContent.substring(0, operation.getPosition()) +
-                                        newContent.substring(operation.getPosition() + 1);
-                                confirmedOperations.add(operation);
-                            } else {
-                                log.warn("Неверный индекс для операции удаления: {}", operation.getPosition());
-                            }
-                        }
-                        case "replace" -> {
-                            log.info("Выполнили операцию замены");
-                            newContent = operation.getCharacter();
-                            confirmedOperations.add(operation);
-                        }
-                        case null, default -> log.warn("Неверный тип операции: {}", operation.getType());
-                    }
-                } catch (Exception e) {
-                    log.error("Ошибка при обработке операции: {}", e.getMessage(), e);
-                }
             }
+        }
 
-            document.setContent(newContent);
-            document.setUpdatedAt(updateTime);
-            documentRepository.save(document);
-            
-            log.info("Документ {} успешно обновлен пользователем {}", documentId, userId);
-            
-            registerUserActivity(documentId, userId);
+        DocumentSessionService.AppliedUpdate update = documentSessionService.apply(session,
+                updateRequest.getOperations(), updateRequest.getBaseRevision(), updateRequest.getClientId());
+        publishAppliedUpdate(session.getDocumentId(), update, userId, updateRequest.getClientId());
+        return update;
+    }
 
-            for (EditOperation operation : confirmedOperations) {
-                Map<String, Object> updateMessage = new HashMap<>();
-                updateMessage.put("documentId", documentId);
-                updateMessage.put("operation", operation);
-                updateMessage.put("updatedAt", updateTime);
-                updateMessage.put("updatedBy", userId);
-                updateMessage.put("clientId", updateRequest.getClientId());
-                updateMessage.put("type", "OPERATION_UPDATE");
-                
-                try {
-                    messagingTemplate.convertAndSend(
-                            "/topic/documents/" + documentId + "/updates",
-                            updateMessage
-                    );
-                } catch (Exception e) {
-                    log.error("Ошибка при отправке операции для документа {}: {}", documentId, e.getMessage(), e);
+    /**
+     * Ставит примененные операции в рассылку. Вызывается внутри задачи сессии документа, поэтому не обращается
+     * к Redis: активность пользователя регистрирует вызывающий код после выхода из сессии.
+     */
+    public void publishAppliedUpdate(UUID documentId, DocumentSessionService.AppliedUpdate update, UUID userId,
+                                     String clientId) {
+        if (!update.operations().isEmpty()) {
+            log.info("Документ {} успешно обновлен пользователем {}, ревизия {}", documentId, userId, update.revision());
+
+            for (EditOperation operation : update.operations()) {
+                if (operation.getClientId() == null) {
+                    operation.setClientId(clientId);
                 }
             }
+            operationBroadcastService.enqueue(documentId, update.operations(), update.updatedAt());
+        }
+        if (update.resyncRequired()) {
+            notifyClientAboutConflict(documentId, update, clientId);
         }
-        
-        return document;
     }
 
-    public void notifyClientAboutConflict(UUID documentId, Document document, String clientId) {
+    public void notifyClientAboutConflict(UUID documentId, DocumentSessionService.AppliedUpdate update, String clientId) {
         log.info("Отправка уведомления о конфликте версий клиенту {}", clientId);
         
         Map<String, Object> conflictMessage = new HashMap<>();
         conflictMessage.put("documentId", documentId);
-        conflictMessage.put("content", document.getContent());
-        conflictMessage.put("updatedAt", document.getUpdatedAt());
-        conflictMessage.put("updatedBy", document.getCreatedBy());
+        conflictMessage.put("updatedAt", update.updatedAt());
+        conflictMessage.put("revision", update.revision());
         conflictMessage.put("clientId", "server-conflict-" + UUID.randomUUID());
+        conflictMessage.put("targetClientId", clientId);
         conflictMessage.put("type", "VERSION_CONFLICT");
-        conflictMessage.put("conflictThreshold", 3);
         
         try {
-            messagingTemplate.convertAndSend(
+            operationBroadcastService.sendAfterOperations(documentId,
                     "/topic/documents/" + documentId + "/conflicts",
                     conflictMessage
             );
 
-            messagingTemplate.convertAndSend(
+            operationBroadcastService.sendAfterOperations(documentId,
                     "/topic/documents/" + documentId + "/updates",
                     conflictMessage
             );
@@ -190,43 +163,6 @@ public class CollaborationService {
         return redisCollaborationService.isUserConnected(documentId, userId);
     }
 
-    public void notifyDocumentUpdate(UUID documentId, Document document, String clientId) {
-        log.info("Отправка уведомления об обновлении документа {} всем пользователям, clientId: {}", documentId, clientId);
-        
-        Map<String, Object> updateMessage = new HashMap<>();
-        updateMessage.put("documentId", documentId);
-        updateMessage.put("content", document.getContent());
-        updateMessage.put("updatedAt", document.getUpdatedAt());
-        updateMessage.put("updatedBy", document.getCreatedBy());
-        updateMessage.put("clientId", clientId);
-        updateMessage.put("type", "DOCUMENT_UPDATE");
-        
-        try {
-            messagingTemplate.convertAndSend(
-                    "/topic/documents/" + documentId + "/updates",
-                    updateMessage
-            );
-            log.info("Уведомление об обновлении документа {} успешно отправлено", documentId);
-        } catch (Exception e) {
-            log.error("Ошибка при отправке уведомления об обновлении документа {}: {}", documentId, e.getMessage(), e);
-        }
-    }
-
-    public void notifyDocumentRestore(UUID documentId, Document document) {
-        Map<String, Object> updateMessage = new HashMap<>();
-        updateMessage.put("documentId", documentId);
-        updateMessage.put("content", document.getContent());
-        updateMessage.put("updatedAt", document.getUpdatedAt());
-        updateMessage.put("updatedBy", document.getCreatedBy());
-        updateMessage.put("clientId", "version-restore-" + UUID.randomUUID());
-        updateMessage.put("type", "DOCUMENT_UPDATE");
-        
-        messagingTemplate.convertAndSend(
-                "/topic/documents/" + documentId + "/updates",
-                updateMessage
-        );
-    }
-
     public void notifyUserJoined(UUID documentId, UUID userId, String username) {
         log.info("Уведомление о подключении пользователя {} к документу {}", username, documentId);
 
@@ -299,7 +235,9 @@ public class CollaborationService {
                     deleteMessage
             );
         }
+    }
 
+    public void purgeDocumentState(UUID documentId) {
         redisCollaborationService.handleDocumentDeleted(documentId);
     }
 }
@@ -0,0 +1,59 @@
+package dsr.practice.docseditor.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dsr.practice.docseditor.config.AppProperties;
+import dsr.practice.docseditor.model.Document;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Кеш документов в памяти процесса, ограниченный суммарной длиной содержимого; наружу отдаются копии.
+ * Запись в документ сбрасывает кеш сразу и повторно после фиксации транзакции.
+ */
+@Component
+@Slf4j
+public class DocumentCache {
+    private final Cache<UUID, Document> cache;
+
+    public DocumentCache(AppProperties appProperties, MeterRegistry meterRegistry) {
+        AppProperties.DocumentCache settings = appProperties.getDocumentCache();
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(settings.getMaximumContentChars())
+                .weigher((UUID id, Document document) ->
+                        document.getContent() == null ? 1 : Math.max(1, document.getContent().length()))
+                .expireAfterAccess(Duration.ofMillis(settings.getExpireAfterAccessMs()))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "documents");
+    }
+
+    public Optional<Document> get(UUID documentId, Function<UUID, Document> loader) {
+        return Optional.ofNullable(cache.get(documentId, id -> {
+                    Document document = loader.apply(id);
+                    return document == null ? null : document.toBuilder().build();
+                }))
+                .map(document -> document.toBuilder().activeUsers(null).build());
+    }
+
+    public void evict(UUID documentId) {
+        cache.invalidate(documentId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    cache.invalidate(documentId);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package dsr.practice.docseditor.service;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dsr.practice.docseditor.dto.ExportRecord;
+import dsr.practice.docseditor.dto.ImportResultDto;
+import dsr.practice.docseditor.editor.DocumentSession;
+import dsr.practice.docseditor.exception.DocumentImportException;
+import dsr.practice.docseditor.model.Document;
+import dsr.practice.docseditor.model.DocumentVersion;
+import dsr.practice.docseditor.repository.DocumentRepository;
+import dsr.practice.docseditor.repository.DocumentVersionBatchRepository;
+import dsr.practice.docseditor.repository.DocumentVersionRepository;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Потоковая выгрузка и загрузка документов в формате NDJSON.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DocumentExportService {
+    private static final int IMPORT_BATCH_SIZE = 500;
+
+    private final DocumentRepository documentRepository;
+    private final DocumentVersionRepository documentVersionRepository;
+    private final DocumentVersionBatchRepository documentVersionBatchRepository;
+    private final DocumentSessionService documentSessionService;
+    private final VersionHistoryService versionHistoryService;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    @Transactional(readOnly = true)
+    public void exportDocument(Document document, OutputStream out) throws IOException {
+        writeDocument(document, out);
+        out.flush();
+    }
+
+    @Transactional(readOnly = true)
+    public void exportDocuments(UUID ownerId, OutputStream out) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        try (Stream<Document> documents = documentRepository.streamByOwner(ownerId)) {
+            Iterator<Document> iterator = documents.iterator();
+            while (iterator.hasNext()) {
+                Document document = iterator.next();
+                zip.putNextEntry(new ZipEntry(document.getId() + ".ndjson"));
+                writeDocument(document, zip);
+                zip.closeEntry();
+                entityManager.detach(document);
+            }
+        }
+        zip.finish();
+        zip.flush();
+    }
+
+    public ImportResultDto importDocuments(InputStream in, UUID userId) {
+        Import state = new Import(userId);
+        try (MappingIterator<ExportRecord> records = objectMapper.readerFor(ExportRecord.class).readValues(in)) {
+            while (records.hasNextValue()) {
+                ExportRecord record = records.nextValue();
+                if (ExportRecord.DOCUMENT.equals(record.getType())) {
+                    state.startDocument(record);
+                } else if (ExportRecord.VERSION.equals(record.getType())) {
+                    state.addVersion(record);
+                } else {
+                    throw new IllegalArgumentException("Неизвестный тип записи: " + record.getType());
+                }
+            }
+            state.finishDocument();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Импорт остановлен, сохранено документов: {}, версий: {}", state.documents, state.versions, e);
+            throw new DocumentImportException(state.result(), e);
+        }
+
+        log.info("Импортировано документов: {}, версий: {}", state.documents, state.versions);
+        return state.result();
+    }
+
+    /**
+     * Строка documents открытого документа отстает от сессии на интервал сброса, поэтому текст и время
+     * изменения берутся из снимка сессии.
+     */
+    private void writeDocument(Document document, OutputStream out) throws IOException {
+        Optional<DocumentSession.Snapshot> live = documentSessionService.findSnapshot(document.getId());
+        writeRecord(out, ExportRecord.builder()
+                .type(ExportRecord.DOCUMENT)
+                .id(document.getId())
+                .title(document.getTitle())
+                .content(live.map(DocumentSession.Snapshot::content).orElse(document.getContent()))
+                .createdAt(document.getCreatedAt())
+                .updatedAt(live.map(DocumentSession.Snapshot::updatedAt).orElse(document.getUpdatedAt()))
+                .build());
+
+        try (Stream<DocumentVersion> versions = documentVersionRepository.streamByDocumentId(document.getId())) {
+            Iterator<DocumentVersion> iterator = versions.iterator();
+            String previous = null;
+            while (iterator.hasNext()) {
+                DocumentVersion version = iterator.next();
+                previous = versionHistoryService.reconstruct(version, previous);
+                writeRecord(out, ExportRecord.builder()
+                        .type(ExportRecord.VERSION)
+                        .id(version.getId())
+                        .versionName(version.getVersionName())
+                        .sequence(version.getSequence())
+                        .content(previous)
+                        .createdAt(version.getCreatedAt())
+                        .build());
+                entityManager.detach(version);
+            }
+        }
+    }
+
+    private void writeRecord(OutputStream out, ExportRecord record) throws IOException {
+        out.write(objectMapper.writeValueAsBytes(record));
+        out.write('\n');
+    }
+
+    /**
+     * Состояние импорта: текущий документ, текст его последней версии и накопленный пакет версий.
+     * Счетчики documents и versions учитывают только зафиксированные записи.
+     */
+    private final class Import {
+        private final UUID userId;
+        private final List<DocumentVersion> batch = new ArrayList<>();
+        private Document pendingDocument;
+        private UUID documentId;
+        private String previousContent;
+        private int sequence;
+        private int documents;
+        private int versions;
+
+        private Import(UUID userId) {
+            this.userId = userId;
+        }
+
+        private void startDocument(ExportRecord record) {
+            finishDocument();
+            LocalDateTime now = LocalDateTime.now();
+            pendingDocument = Document.builder()
+                    .title(record.getTitle() == null ? "Imported Document" : record.getTitle())
+                    .content(record.getContent() == null ? "" : record.getContent())
+                    .createdBy(userId)
+                    .createdAt(record.getCreatedAt() == null ? now : record.getCreatedAt())
+                    .updatedAt(now)
+                    .versionCounter(0)
+                    .revision(0L)
+                    .build();
+            previousContent = null;
+            sequence = 0;
+        }
+
+        private void addVersion(ExportRecord record) {
+            if (pendingDocument == null && documentId == null) {
+                throw new IllegalArgumentException("Запись версии до записи документа");
+            }
+            String content = record.getContent() == null ? "" : record.getContent();
+            String previous = previousContent;
+            DocumentVersion version = DocumentVersion.builder()
+                    .id(UUID.randomUUID())
+                    .versionName(record.getVersionName() == null ? "Version " + (sequence + 1) : record.getVersionName())
+                    .sequence(++sequence)
+                    .createdBy(userId)
+                    .createdAt(record.getCreatedAt() == null ? LocalDateTime.now() : record.getCreatedAt())
+                    .build();
+            versionHistoryService.encode(version, content, () -> previous);
+
+            batch.add(version);
+            previousContent = content;
+            if (batch.size() >= IMPORT_BATCH_SIZE) {
+                flushVersions();
+            }
+        }
+
+        private void finishDocument() {
+            if (pendingDocument == null && documentId == null) {
+                return;
+            }
+            flushVersions();
+            documentId = null;
+        }
+
+        /**
+         * Новый документ сохраняется в одной транзакции с первым пакетом своих версий, чтобы не остаться
+         * без истории, если этот пакет не запишется.
+         */
+        private void flushVersions() {
+            if (batch.isEmpty() && pendingDocument == null) {
+                return;
+            }
+            Document document = pendingDocument;
+            int versionCounter = sequence;
+            UUID savedId = transactionTemplate.execute(status -> {
+                UUID id = document == null ? documentId : documentRepository.save(document).getId();
+                if (!batch.isEmpty()) {
+                    batch.forEach(version -> version.setDocumentId(id));
+                    documentVersionBatchRepository.insert(batch);
+                    documentRepository.updateVersionCounter(id, versionCounter);
+                }
+                return id;
+            });
+            if (document != null) {
+                pendingDocument = null;
+                documentId = savedId;
+                documents++;
+            }
+            versions += batch.size();
+            batch.clear();
+        }
+
+        private ImportResultDto result() {
+            return new ImportResultDto(documents, versions);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package dsr.practice.docseditor.service;
+
+import dsr.practice.docseditor.config.AppProperties;
+import dsr.practice.docseditor.repository.DocumentOperationRepository;
+import dsr.practice.docseditor.repository.DocumentRepository;
+import dsr.practice.docseditor.repository.DocumentVersionRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Фоновая очистка документов, помеченных удаленными. Строка документа удаляется последней.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DocumentPurgeService {
+    private final DocumentRepository documentRepository;
+    private final DocumentVersionRepository documentVersionRepository;
+    private final DocumentOperationRepository documentOperationRepository;
+    private final CollaborationService collaborationService;
+    private final AppProperties appProperties;
+
+    @Scheduled(fixedDelayString = "${app.deletion.purge-interval-ms:60000}")
+    public void purgeDeletedDocuments() {
+        AppProperties.Deletion settings = appProperties.getDeletion();
+        List<UUID> documentIds = documentRepository.findDeletedIds(settings.getPurgeDocumentsPerRun());
+        for (UUID documentId : documentIds) {
+            try {
+                purge(documentId, settings.getPurgeBatchSize());
+            } catch (Exception e) {
+                log.error("Ошибка при очистке удаленного документа {}: {}", documentId, e.getMessage(), e);
+            }
+        }
+    }
+
+    private void purge(UUID documentId, int batchSize) {
+        int versions = 0;
+        int deleted;
+        do {
+            deleted = documentVersionRepository.deleteBatchByDocumentId(documentId, batchSize);
+            versions += deleted;
+        } while (deleted == batchSize);
+
+        int operations = 0;
+        do {
+            deleted = documentOperationRepository.deleteBatch(documentId, batchSize);
+            operations += deleted;
+        } while (deleted == batchSize);
+
+        collaborationService.purgeDocumentState(documentId);
+        documentRepository.purgeDeleted(documentId);
+
+        log.info("Удаленный документ {} очищен: версий {}, операций {}", documentId, versions, operations);
+    }
+}
@@ -1,38 +1,70 @@
 package dsr.practice.docseditor.service;
 
+import dsr.practice.docseditor.dto.ContentRangeDto;
 import dsr.practice.docseditor.dto.CreateDocumentRequest;
+import dsr.practice.docseditor.dto.DocumentPageDto;
+import dsr.practice.docseditor.dto.DocumentSummaryDto;
 import dsr.practice.docseditor.dto.DocumentUpdateRequest;
+import dsr.practice.docseditor.dto.EditOperation;
 import dsr.practice.docseditor.dto.SaveVersionRequest;
+import dsr.practice.docseditor.dto.VersionPageDto;
+import dsr.practice.docseditor.dto.VersionSummaryDto;
+import dsr.practice.docseditor.editor.DocumentSession;
+import dsr.practice.docseditor.editor.EditOperationApplier;
+import dsr.practice.docseditor.editor.OperationCoalescer;
+import dsr.practice.docseditor.editor.Rope;
+import dsr.practice.docseditor.editor.crdt.RgaCodec;
 import dsr.practice.docseditor.exception.AccessDeniedException;
 import dsr.practice.docseditor.exception.DocumentNotFoundException;
 import dsr.practice.docseditor.exception.DuplicateVersionNameException;
 import dsr.practice.docseditor.model.Document;
 import dsr.practice.docseditor.model.DocumentVersion;
 import dsr.practice.docseditor.model.User;
+import dsr.practice.docseditor.repository.DocumentOperationRepository;
 import dsr.practice.docseditor.repository.DocumentRepository;
 import dsr.practice.docseditor.repository.DocumentVersionRepository;
 import dsr.practice.docseditor.repository.UserRepository;
+import dsr.practice.docseditor.utils.KeysetCursor;
 import dsr.practice.docseditor.utils.SecurityUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Function;
 import java.util.stream.Collectors;
-import dsr.practice.docseditor.dto.EditOperation;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class DocumentService {
+    private static final int MAX_VERSION_PAGE_SIZE = 100;
+    private static final int MAX_DOCUMENT_PAGE_SIZE = 100;
+    private static final int MAX_CONTENT_RANGE = 1 << 20;
+    private static final String VERSION_NAME_CONSTRAINT = "document_versions_document_name_idx";
+
     private final DocumentRepository documentRepository;
+    private final DocumentOperationRepository documentOperationRepository;
     private final DocumentVersionRepository documentVersionRepository;
     private final UserRepository userRepository;
     private final SecurityUtils securityUtils;
     private final CollaborationService collaborationService;
+    private final EditOperationApplier editOperationApplier;
+    private final OperationCoalescer operationCoalescer;
+    private final DocumentSessionService documentSessionService;
+    private final VersionHistoryService versionHistoryService;
+    private final DocumentCache documentCache;
+    private final TransactionTemplate transactionTemplate;
 
     @Transactional
     public Document createDocument(CreateDocumentRequest request, UUID currentUserId) {
@@ -43,28 +75,92 @@ public class DocumentService {
                 .createdBy(currentUserId)
                 .content(request.getContent() == null ? "Hello!" : request.getContent())
                 .versionCounter(0)
+                .revision(0L)
                 .build();
         return documentRepository.save(newDocument);
     }
 
     @Transactional(readOnly = true)
     public Document findDocument(UUID id) {
+        return documentCache.get(id, documentRepository::findDocumentById)
+                .orElseThrow(() -> new DocumentNotFoundException("Document not found with ID: " + id));
+    }
+    
+    private Document findManagedDocument(UUID id) {
         Document document = documentRepository.findDocumentById(id);
         if (document == null) {
             throw new DocumentNotFoundException("Document not found with ID: " + id);
         }
         return document;
     }
-    
+
+    /**
+     * Документ под блокировкой строки до конца транзакции: изменения без открытой сессии назначают
+     * ревизии по очереди.
+     */
+    private Document findLockedDocument(UUID id) {
+        if (documentRepository.lockForUpdate(id).isEmpty()) {
+            throw new DocumentNotFoundException("Document not found with ID: " + id);
+        }
+        return findManagedDocument(id);
+    }
+
     @Transactional(readOnly = true)
     public Document getDocumentWithActiveUsers(UUID id, UUID userId) {
         Document document = findDocument(id);
 
         validateUserAccess(document, userId);
 
-        document.setActiveUsers(collaborationService.getActiveUsersList(id));
+        Document result = documentSessionService.findSnapshot(id)
+                .map(snapshot -> copyWithContent(document, snapshot.content(), snapshot.updatedAt(), snapshot.revision()))
+                .orElse(document);
+        result.setActiveUsers(collaborationService.getActiveUsersList(id));
         
-        return document;
+        return result;
+    }
+
+    @Transactional(readOnly = true)
+    public Document getDocumentForExport(UUID id, UUID userId) {
+        Document document = findDocument(id);
+
+        validateUserAccess(document, userId);
+
+        return documentSessionService.findSnapshot(id)
+                .map(snapshot -> copyWithContent(document, snapshot.content(), snapshot.updatedAt(), snapshot.revision()))
+                .orElse(document);
+    }
+
+    @Transactional(readOnly = true)
+    public ContentRangeDto getContentRange(UUID documentId, int offset, int length, UUID userId) {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Offset and length must be non-negative");
+        }
+        int limit = Math.min(length, MAX_CONTENT_RANGE);
+
+        // Живой диапазон читается из Rope, строка документа с содержимым нужна только без открытой сессии
+        if (!documentRepository.existsById(documentId)) {
+            throw new DocumentNotFoundException("Document not found with ID: " + documentId);
+        }
+        validateUserAccess(documentId, userId);
+
+        Optional<ContentRangeDto> live = documentSessionService.findRange(documentId, offset, limit);
+        if (live.isPresent()) {
+            return live.get();
+        }
+
+        Document document = findDocument(documentId);
+        String content = document.getContent() == null ? "" : document.getContent();
+        return ContentRangeDto.of(documentId, content, offset, limit, currentRevision(document), document.getUpdatedAt());
+    }
+
+    @Transactional(readOnly = true)
+    public byte[] getCrdtState(UUID documentId, UUID userId) {
+        Document document = findDocument(documentId);
+
+        validateUserAccess(document, userId);
+
+        return documentSessionService.findCrdtState(documentId)
+                .orElseGet(() -> RgaCodec.encode(documentSessionService.loadCrdt(document)));
     }
 
     @Transactional
@@ -72,22 +168,24 @@ public class DocumentService {
                                                SaveVersionRequest request, UUID currentUserId) {
         validateUserAccess(document, currentUserId);
 
-        boolean versionExists = documentVersionRepository.existsByDocumentIdAndVersionName(
-                documentId, request.getVersionName());
-                
-        if (versionExists) {
-            throw new DuplicateVersionNameException("Version with name '" + request.getVersionName() + "' already exists");
-        }
-        
         DocumentVersion version = DocumentVersion.builder()
                 .documentId(documentId)
                 .versionName(request.getVersionName())
-                .content(document.getContent())
+                .content(documentSessionService.findSnapshot(documentId)
+                        .map(DocumentSession.Snapshot::content)
+                        .orElse(document.getContent()))
                 .createdBy(currentUserId)
                 .createdAt(LocalDateTime.now())
                 .build();
 
-        version = documentVersionRepository.save(version);
+        try {
+            version = versionHistoryService.save(version);
+        } catch (DataIntegrityViolationException e) {
+            if (isViolationOf(e, VERSION_NAME_CONSTRAINT)) {
+                throw new DuplicateVersionNameException("Version with name '" + request.getVersionName() + "' already exists");
+            }
+            throw e;
+        }
 
         incrementDocumentVersion(documentId);
 
@@ -95,19 +193,49 @@ public class DocumentService {
     }
 
     @Transactional(readOnly = true)
-    public List<DocumentVersion> findDocumentVersions(UUID documentId) {
+    public VersionPageDto findVersionSummaries(UUID documentId, String cursor, int limit) {
         Document document = findDocument(documentId);
 
         UUID userId = securityUtils.getCurrentUserIdOrThrow();
         validateUserAccess(document, userId);
 
-        List<DocumentVersion> versions = documentVersionRepository.getDocumentVersionsByDocumentId(documentId);
+        int pageSize = Math.clamp(limit, 1, MAX_VERSION_PAGE_SIZE);
+        Pageable page = PageRequest.of(0, pageSize + 1);
+        List<VersionSummaryDto> versions;
+        if (cursor == null || cursor.isBlank()) {
+            versions = documentVersionRepository.findSummaries(documentId, page);
+        } else {
+            KeysetCursor position = KeysetCursor.decode(cursor);
+            versions = documentVersionRepository.findSummariesBefore(
+                    documentId, position.timestamp(), Integer.parseInt(position.key()), page);
+        }
 
-        enrichVersionsWithAuthorInfo(versions);
-        
-        return versions;
+        String nextCursor = null;
+        if (versions.size() > pageSize) {
+            versions = versions.subList(0, pageSize);
+            VersionSummaryDto last = versions.getLast();
+            nextCursor = new KeysetCursor(last.getCreatedAt(), String.valueOf(last.getSequence())).encode();
+        }
+        return new VersionPageDto(versions, nextCursor);
     }
-    
+
+    @Transactional(readOnly = true)
+    public DocumentVersion getDocumentVersion(UUID documentId, UUID versionId) {
+        Document document = findDocument(documentId);
+
+        UUID userId = securityUtils.getCurrentUserIdOrThrow();
+        validateUserAccess(document, userId);
+
+        DocumentVersion version = documentVersionRepository.getDocumentVersionById(versionId);
+        if (version == null || !version.getDocumentId().equals(documentId)) {
+            throw new DocumentNotFoundException("Version not found with ID: " + versionId);
+        }
+
+        versionHistoryService.loadContent(version);
+        enrichVersionsWithAuthorInfo(List.of(version));
+        return version;
+    }
+
     private void enrichVersionsWithAuthorInfo(List<DocumentVersion> versions) {
         List<UUID> authorIds = versions.stream()
                 .map(DocumentVersion::getCreatedBy)
@@ -127,19 +255,16 @@ public class DocumentService {
 
     @Transactional
     public void incrementDocumentVersion(UUID documentId) {
-        Document document = findDocument(documentId);
-        
-        if (document.getVersionCounter() == null) {
-            document.setVersionCounter(1);
-        } else {
-            document.setVersionCounter(document.getVersionCounter() + 1);
+        if (documentRepository.incrementVersionCounter(documentId, LocalDateTime.now()) == 0) {
+            throw new DocumentNotFoundException("Document not found with ID: " + documentId);
         }
-        
-        document.setUpdatedAt(LocalDateTime.now());
-        documentRepository.save(document);
+        documentCache.evict(documentId);
     }
 
-    @Transactional
+    /**
+     * Если документ открыт, восстановление проходит через его сессию как обычная операция; очередь сессии
+     * разбирается вне транзакции запроса, запись в базу в этом случае делает сама сессия.
+     */
     public Document restoreDocumentVersion(UUID documentId, UUID versionId) {
         Document document = findDocument(documentId);
         DocumentVersion documentVersion = documentVersionRepository.getDocumentVersionById(versionId);
@@ -155,55 +280,109 @@ public class DocumentService {
         UUID userId = securityUtils.getCurrentUserIdOrThrow();
         validateUserAccess(document, userId);
 
-        document.setContent(documentVersion.getContent());
-        document.setUpdatedAt(LocalDateTime.now());
-        documentRepository.save(document);
-        
-        return document;
+        String versionContent = versionHistoryService.loadContent(documentVersion);
+        EditOperation restoreOperation = EditOperation.builder()
+                .documentId(documentId)
+                .type("replace")
+                .character(versionContent)
+                .clientId("version-restore-" + versionId)
+                .clientTimestamp(System.currentTimeMillis())
+                .userId(userId)
+                .build();
+        return applyEdit(documentId, userId, session -> {
+            DocumentSessionService.AppliedUpdate update = documentSessionService.apply(session,
+                    List.of(restoreOperation), null, restoreOperation.getClientId());
+            collaborationService.publishAppliedUpdate(documentId, update, userId, restoreOperation.getClientId());
+            return copyWithContent(document, session.getContent().toString(), session.getUpdatedAt(), session.getRevision());
+        }, stored -> {
+            restoreOperation.setServerTimestamp(System.currentTimeMillis());
+            restoreOperation.setRevision(currentRevision(stored) + 1);
+            stored.setContent(versionContent);
+            stored.setUpdatedAt(LocalDateTime.now());
+            stored.setRevision(restoreOperation.getRevision());
+            documentRepository.save(stored);
+            documentOperationRepository.append(documentId, List.of(restoreOperation));
+            documentCache.evict(documentId);
+            return stored;
+        });
     }
 
-    @Transactional
     public Document updateDocumentContent(UUID documentId, DocumentUpdateRequest request) {
         Document document = findDocument(documentId);
 
         UUID userId = securityUtils.getCurrentUserIdOrThrow();
         validateUserAccess(document, userId);
+        if (request.getOperations() != null) {
+            request.getOperations().forEach(operation -> operation.setUserId(userId));
+        }
+
+        return applyEdit(documentId, userId, session -> {
+            DocumentSessionService.AppliedUpdate update = documentSessionService.apply(session,
+                    request.getOperations(), request.getBaseRevision(), request.getClientId());
+            collaborationService.publishAppliedUpdate(documentId, update, userId, request.getClientId());
+            return copyWithContent(document, session.getContent().toString(), session.getUpdatedAt(), session.getRevision());
+        }, stored -> updateStoredContent(documentId, stored, request));
+    }
+
+    /**
+     * Применяет изменение через открытую сессию, а без нее - к строке documents под блокировкой. Сессия
+     * открывается под той же блокировкой, поэтому после нее сессия проверяется заново: если она успела
+     * открыться или еще закрывается, изменение дожидается ее и идет через сессию.
+     */
+    private Document applyEdit(UUID documentId, UUID userId, Function<DocumentSession, Document> live,
+                               Function<Document, Document> stored) {
+        while (true) {
+            Optional<Document> liveResult = documentSessionService.executeIfOpen(documentId, live);
+            if (liveResult.isPresent()) {
+                collaborationService.registerUserActivity(documentId, userId);
+                return liveResult.get();
+            }
+
+            Document result = transactionTemplate.execute(status -> {
+                Document locked = findLockedDocument(documentId);
+                return documentSessionService.isLoaded(documentId) ? null : stored.apply(locked);
+            });
+            if (result != null) {
+                return result;
+            }
+            documentSessionService.awaitClosing(documentId);
+        }
+    }
 
+    private Document updateStoredContent(UUID documentId, Document document, DocumentUpdateRequest request) {
         if (request.getOperations() != null && !request.getOperations().isEmpty()) {
-            String newContent = document.getContent();
+            Rope content = new Rope(document.getContent());
+            long revision = currentRevision(document);
+            List<EditOperation> applied = new ArrayList<>();
             
-            for (EditOperation operation : request.getOperations()) {
-                if ("insert".equals(operation.getType())) {
-                    if (operation.getPosition() >= 0 && operation.getPosition() <= newContent.length()) {
-                        newContent = newContent.substring(0, operation.getPosition()) + 
-                                    operation.getCharacter() + 
-                                    newContent.substring(operation.getPosition());
-                    }
-                } else if ("delete".equals(operation.getType())) {
-                    if (operation.getPosition() >= 0 && operation.getPosition() < newContent.length()) {
-                        newContent = newContent.substring(0, operation.getPosition()) + 
-                                    newContent.substring(operation.getPosition() + 1);
-                    }
-                } else if ("replace".equals(operation.getType())) {
-                    newContent = operation.getCharacter();
+            for (EditOperation operation : operationCoalescer.coalesce(
+                    editOperationApplier.expand(request.getOperations(), content.length()))) {
+                if (editOperationApplier.apply(content, operation)) {
+                    operation.setServerTimestamp(System.currentTimeMillis());
+                    operation.setRevision(++revision);
+                    applied.add(operation);
                 }
             }
             
-            document.setContent(newContent);
+            document.setContent(content.toString());
+            document.setRevision(revision);
+            documentOperationRepository.append(documentId, applied);
         }
         
         document.setUpdatedAt(LocalDateTime.now());
+        documentCache.evict(documentId);
         return documentRepository.save(document);
     }
     
     @Transactional
     public Document updateDocumentTitle(UUID documentId, String title, UUID userId) {
-        Document document = findDocument(documentId);
+        Document document = findManagedDocument(documentId);
 
         validateUserAccess(document, userId);
         
         document.setTitle(title);
         document.setUpdatedAt(LocalDateTime.now());
+        documentCache.evict(documentId);
         return documentRepository.save(document);
     }
 
@@ -217,18 +396,41 @@ public class DocumentService {
             throw new AccessDeniedException("Only the document owner can delete the document");
         }
 
-        documentVersionRepository.deleteAllByDocumentId(documentId);
+        documentRepository.markDeleted(documentId, LocalDateTime.now());
+        documentCache.evict(documentId);
 
-        documentRepository.deleteById(documentId);
+        documentSessionService.discard(documentId);
 
         collaborationService.handleDocumentDeleted(documentId);
     }
 
     @Transactional(readOnly = true)
-    public List<Document> getCurrentUserDocuments() {
+    public DocumentPageDto getCurrentUserDocuments(String cursor, int limit, Sort.Direction direction) {
         UUID currentUserId = securityUtils.getCurrentUserIdOrThrow();
 
-        return documentRepository.findByCreatedBy(currentUserId);
+        int pageSize = Math.clamp(limit, 1, MAX_DOCUMENT_PAGE_SIZE);
+        Pageable page = PageRequest.of(0, pageSize + 1);
+        boolean ascending = direction == Sort.Direction.ASC;
+        List<DocumentSummaryDto> documents;
+        if (cursor == null || cursor.isBlank()) {
+            documents = ascending
+                    ? documentRepository.findSummariesAsc(currentUserId, page)
+                    : documentRepository.findSummariesDesc(currentUserId, page);
+        } else {
+            KeysetCursor position = KeysetCursor.decode(cursor);
+            UUID id = UUID.fromString(position.key());
+            documents = ascending
+                    ? documentRepository.findSummariesAfter(currentUserId, position.timestamp(), id, page)
+                    : documentRepository.findSummariesBefore(currentUserId, position.timestamp(), id, page);
+        }
+
+        String nextCursor = null;
+        if (documents.size() > pageSize) {
+            documents = documents.subList(0, pageSize);
+            DocumentSummaryDto last = documents.getLast();
+            nextCursor = new KeysetCursor(last.getUpdatedAt(), last.getId().toString()).encode();
+        }
+        return new DocumentPageDto(documents, nextCursor);
     }
 
     @Transactional(readOnly = true)
@@ -238,7 +440,33 @@ public class DocumentService {
                 .orElse(false);
     }
 
+    private Document copyWithContent(Document document, String content, LocalDateTime updatedAt, long revision) {
+        return Document.builder()
+                .id(document.getId())
+                .title(document.getTitle())
+                .content(content)
+                .createdBy(document.getCreatedBy())
+                .createdAt(document.getCreatedAt())
+                .updatedAt(updatedAt)
+                .versionCounter(document.getVersionCounter())
+                .revision(revision)
+                .build();
+    }
+
+    private long currentRevision(Document document) {
+        return document.getRevision() == null ? 0 : document.getRevision();
+    }
+
     private void validateUserAccess(Document document, UUID userId) {
+        validateUserAccess(document.getId(), userId);
+    }
+
+    private void validateUserAccess(UUID documentId, UUID userId) {
         // TODO: давать доступ пользователям по почте
     }
+
+    private static boolean isViolationOf(DataIntegrityViolationException e, String constraint) {
+        String message = e.getMostSpecificCause().getMessage();
+        return message != null && message.contains(constraint);
+    }
 }
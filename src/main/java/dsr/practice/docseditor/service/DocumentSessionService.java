@@ -0,0 +1,624 @@
+package dsr.practice.docseditor.service;
+
+import dsr.practice.docseditor.config.AppProperties;
+import dsr.practice.docseditor.dto.ContentRangeDto;
+import dsr.practice.docseditor.dto.EditOperation;
+import dsr.practice.docseditor.editor.DocumentSession;
+import dsr.practice.docseditor.editor.EditOperationApplier;
+import dsr.practice.docseditor.editor.OperationCoalescer;
+import dsr.practice.docseditor.editor.OperationTransformer;
+import dsr.practice.docseditor.editor.crdt.RgaCodec;
+import dsr.practice.docseditor.editor.crdt.RgaDocument;
+import dsr.practice.docseditor.exception.CrdtResyncRequiredException;
+import dsr.practice.docseditor.exception.DocumentNotFoundException;
+import dsr.practice.docseditor.exception.DocumentSessionClosedException;
+import dsr.practice.docseditor.model.Document;
+import dsr.practice.docseditor.repository.DocumentOperationRepository;
+import dsr.practice.docseditor.repository.DocumentRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Открытые сессии редактирования. Снимок - строка documents вместе с revision; операции после него лежат
+ * в журнале, и при открытии сессии хвост журнала применяется заново.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DocumentSessionService {
+    private static final long CLOSE_WAIT_SECONDS = 30;
+
+    private final DocumentRepository documentRepository;
+    private final DocumentOperationRepository documentOperationRepository;
+    private final AppProperties appProperties;
+    private final EditOperationApplier editOperationApplier;
+    private final OperationTransformer operationTransformer;
+    private final OperationCoalescer operationCoalescer;
+    private final DocumentCache documentCache;
+    private final PlatformTransactionManager transactionManager;
+
+    private final Map<UUID, DocumentSession> sessions = new ConcurrentHashMap<>();
+    private final Map<String, Set<UUID>> documentsByConnection = new ConcurrentHashMap<>();
+
+    /**
+     * Регистрирует STOMP-сессию {@code connectionId} редактором документа, при необходимости открывая сессию.
+     * Если документ в этот момент закрывается, ждет завершения закрытия и открывает его заново.
+     */
+    public DocumentSession acquire(UUID documentId, UUID userId, String connectionId) {
+        while (true) {
+            DocumentSession session = sessions.get(documentId);
+            if (session == null) {
+                session = open(documentId);
+            }
+
+            DocumentSession current = session;
+            if (session.executeIfOpen(() -> {
+                current.addEditor(connectionId, userId);
+                return true;
+            }).isPresent()) {
+                documentsByConnection.computeIfAbsent(connectionId, id -> ConcurrentHashMap.newKeySet()).add(documentId);
+                return session;
+            }
+            awaitClosing(session);
+        }
+    }
+
+    /**
+     * Загружает и регистрирует сессию под блокировкой строки документа. Изменения без сессии берут ту же
+     * блокировку и после нее проверяют, не открылась ли сессия, поэтому не проходят мимо нее.
+     */
+    private DocumentSession open(UUID documentId) {
+        return inNewTransaction(() -> {
+            DocumentSession existing = sessions.get(documentId);
+            if (existing != null) {
+                return existing;
+            }
+            DocumentSession loaded = load(documentId);
+            sessions.put(documentId, loaded);
+            return loaded;
+        });
+    }
+
+    /**
+     * Снимает STOMP-сессию с редактирования документа и закрывает сессию документа, если редакторов не осталось.
+     *
+     * @return id пользователя, если это было его последнее подключение к документу
+     */
+    public Optional<UUID> release(UUID documentId, String connectionId) {
+        documentsByConnection.computeIfPresent(connectionId, (id, documents) -> {
+            documents.remove(documentId);
+            return documents.isEmpty() ? null : documents;
+        });
+
+        DocumentSession session = sessions.get(documentId);
+        if (session == null) {
+            return Optional.empty();
+        }
+
+        synchronized (session) {
+            Optional<Release> release = session.executeIfOpen(() -> {
+                UUID userId = session.removeEditor(connectionId);
+                if (userId == null) {
+                    return new Release(null, false, null);
+                }
+                UUID departed = session.hasEditor(userId) ? null : userId;
+                if (session.hasEditors()) {
+                    return new Release(departed, false, null);
+                }
+                session.close();
+                return new Release(departed, true, takeSnapshot(session, true));
+            });
+            if (release.isEmpty() || !release.get().closed()) {
+                return release.map(Release::userId);
+            }
+
+            DocumentSession.Snapshot snapshot = release.get().snapshot();
+            if (snapshot != null) {
+                LogWrite write = appendLog(documentId, snapshot);
+                if (write == LogWrite.DIVERGED) {
+                    sessions.remove(documentId, session);
+                    session.markReleased();
+                    return Optional.ofNullable(release.get().userId());
+                }
+                boolean logged = write == LogWrite.WRITTEN;
+                boolean saved = writeSnapshot(documentId, snapshot);
+                if (!logged && !saved) {
+                    session.execute(() -> {
+                        settle(session, snapshot, false, false);
+                        session.reopen();
+                        return null;
+                    });
+                    log.warn("Не удалось сохранить документ {} при закрытии сессии, сессия оставлена в памяти", documentId);
+                    return Optional.ofNullable(release.get().userId());
+                }
+                if (!logged) {
+                    log.warn("Операции документа {} до ревизии {} не попали в журнал", documentId, snapshot.revision());
+                }
+            }
+
+            sessions.remove(documentId, session);
+            session.markReleased();
+            log.info("Последний редактор покинул документ {}, сессия закрыта", documentId);
+            return Optional.ofNullable(release.get().userId());
+        }
+    }
+
+    /**
+     * Документы, открытые STOMP-сессией; используется при обрыве соединения.
+     */
+    public Set<UUID> findDocumentsOf(String connectionId) {
+        Set<UUID> documents = documentsByConnection.get(connectionId);
+        return documents == null ? Set.of() : Set.copyOf(documents);
+    }
+
+    /**
+     * Закрывает сессию удаленного документа без сохранения: накопленные изменения больше не нужны.
+     */
+    public void discard(UUID documentId) {
+        DocumentSession session = sessions.get(documentId);
+        if (session == null) {
+            return;
+        }
+        closeWithoutSaving(session);
+        log.info("Сессия удаленного документа {} закрыта без сохранения", documentId);
+    }
+
+    /**
+     * Есть ли в памяти сессия документа, включая закрывающуюся: пока она есть, снимок из нее может перезаписать
+     * содержимое строки documents.
+     */
+    public boolean isLoaded(UUID documentId) {
+        return sessions.containsKey(documentId);
+    }
+
+    /**
+     * Ждет, пока закрывающаяся сессия документа сохранится или вернется к работе.
+     */
+    public void awaitClosing(UUID documentId) {
+        DocumentSession session = sessions.get(documentId);
+        if (session != null) {
+            awaitClosing(session);
+        }
+    }
+
+    public Optional<DocumentSession> find(UUID documentId) {
+        return Optional.ofNullable(sessions.get(documentId));
+    }
+
+    /**
+     * Выполняет задачу в открытой сессии документа. Пусто, если документ не открыт или закрывается.
+     * В режиме write-through принятые задачей операции пишутся в журнал до возврата.
+     */
+    public <T> Optional<T> executeIfOpen(UUID documentId, Function<DocumentSession, T> task) {
+        DocumentSession session = sessions.get(documentId);
+        if (session == null) {
+            return Optional.empty();
+        }
+        Optional<T> result = session.executeIfOpen(() -> task.apply(session));
+        if (result.isPresent() && !appProperties.getCollaboration().isWriteBehind()) {
+            flush(session, false);
+        }
+        return result;
+    }
+
+    /**
+     * То же, что {@link #executeIfOpen(UUID, Function)}, но для запросов, которым нужна открытая сессия:
+     * операции принимаются только после подключения к документу.
+     */
+    public <T> T execute(UUID documentId, Function<DocumentSession, T> task) {
+        return executeIfOpen(documentId, task).orElseThrow(() -> new DocumentSessionClosedException(
+                "Document " + documentId + " is not open for editing, reconnect to the document"));
+    }
+
+    public Optional<DocumentSession.Snapshot> findSnapshot(UUID documentId) {
+        return find(documentId).flatMap(session -> session.executeIfOpen(session::snapshot));
+    }
+
+    /**
+     * Фрагмент текста открытой сессии; Rope отдает диапазон без сборки всей строки.
+     */
+    public Optional<ContentRangeDto> findRange(UUID documentId, int offset, int length) {
+        return find(documentId).flatMap(session -> session.executeIfOpen(() -> ContentRangeDto.of(
+                documentId, session.getContent(), offset, length, session.getRevision(), session.getUpdatedAt())));
+    }
+
+    public AppliedUpdate apply(DocumentSession session, List<EditOperation> operations, Long baseRevision, String clientId) {
+        if (operations == null || operations.isEmpty()) {
+            return new AppliedUpdate(List.of(), session.getRevision(), session.getUpdatedAt(), false);
+        }
+
+        List<EditOperation> expanded = operationCoalescer.coalesce(
+                editOperationApplier.expand(operations, baseLength(session, baseRevision)));
+        boolean positional = expanded.stream().allMatch(operation -> operation.getId() == null);
+        List<EditOperation> transformed = expanded;
+        if (positional && baseRevision != null && baseRevision < session.getRevision()) {
+            Optional<List<EditOperation>> concurrent = session.operationsSince(baseRevision);
+            if (concurrent.isEmpty()) {
+                log.info("Ревизия {} клиента {} вышла за пределы истории документа {} (текущая ревизия {}), требуется синхронизация",
+                        baseRevision, clientId, session.getDocumentId(), session.getRevision());
+                return new AppliedUpdate(List.of(), session.getRevision(), session.getUpdatedAt(), true);
+            }
+            // Клиент держит в полете один пакет и отправляет следующий только после того, как его ревизия
+            // дошла до подтверждения, поэтому все операции после baseRevision ему неизвестны - включая его
+            // собственные, если они были. Преобразуем против всех подряд в порядке ревизий.
+            transformed = operationTransformer.transform(expanded, concurrent.get());
+        }
+
+        RgaDocument crdt = session.getCrdt();
+        long now = System.currentTimeMillis();
+        if (crdt != null && baseRevision != null && clientId != null) {
+            // Клиент прислал baseRevision, значит получил все операции до нее: их надгробия ему больше не нужны.
+            session.clockAt(baseRevision).ifPresent(seen -> crdt.observe(clientId, seen, now));
+        }
+        List<EditOperation> applied = new ArrayList<>(transformed.size());
+        boolean resyncRequired = false;
+        for (EditOperation operation : transformed) {
+            try {
+                List<EditOperation> effects = crdt == null ? List.of(operation) : crdt.integrate(operation, now);
+                for (EditOperation effect : effects) {
+                    if (editOperationApplier.apply(session.getContent(), effect)) {
+                        effect.setServerTimestamp(System.currentTimeMillis());
+                        session.record(effect);
+                        applied.add(effect);
+                    }
+                }
+            } catch (CrdtResyncRequiredException e) {
+                log.info("Операция клиента {} в документе {} не может быть размещена: {}",
+                        clientId, session.getDocumentId(), e.getMessage());
+                resyncRequired = true;
+                break;
+            } catch (Exception e) {
+                // Следующие операции пакета опираются на пропущенную, применять их нельзя
+                log.error("Ошибка при обработке операции клиента {} в документе {}, требуется синхронизация: {}",
+                        clientId, session.getDocumentId(), e.getMessage(), e);
+                resyncRequired = true;
+                break;
+            }
+        }
+
+        if (!applied.isEmpty()) {
+            session.setUpdatedAt(LocalDateTime.now());
+            session.markDirty(applied.size());
+        }
+        return new AppliedUpdate(applied, session.getRevision(), session.getUpdatedAt(), resyncRequired);
+    }
+
+    /**
+     * Длина текста, который клиент видел на ревизии baseRevision: текущая длина с откатом операций после нее.
+     * Замена после baseRevision все равно отбросит пакет при преобразовании, поэтому тогда берется текущая длина.
+     */
+    private int baseLength(DocumentSession session, Long baseRevision) {
+        int length = session.getContent().length();
+        if (baseRevision == null || baseRevision >= session.getRevision()) {
+            return length;
+        }
+        List<EditOperation> concurrent = session.operationsSince(baseRevision).orElse(List.of());
+        int base = length;
+        for (EditOperation operation : concurrent) {
+            switch (operation.getType()) {
+                case "insert" -> base -= operation.getCharacter() == null ? 0 : operation.getCharacter().length();
+                case "delete" -> base += operation.deletedLength();
+                case "replace" -> {
+                    return length;
+                }
+                case null, default -> {
+                }
+            }
+        }
+        return base;
+    }
+
+    public Optional<byte[]> findCrdtState(UUID documentId) {
+        return find(documentId).flatMap(session -> session.getCrdt() == null
+                ? Optional.empty()
+                : session.executeIfOpen(() -> RgaCodec.encode(session.getCrdt())));
+    }
+
+    @Scheduled(fixedDelayString = "${app.collaboration.flush-check-interval-ms:200}")
+    public void flushDueSessions() {
+        AppProperties.Collaboration settings = appProperties.getCollaboration();
+        long now = System.currentTimeMillis();
+
+        sessions.values().stream()
+                .filter(session -> session.isFlushDue(now, settings.getFlushIntervalMs(), settings.getFlushOperationThreshold())
+                        || session.isSnapshotDue(now, settings.getSnapshotIntervalMs(), settings.getSnapshotOperationThreshold()))
+                .forEach(session -> flush(session, false));
+    }
+
+    @PreDestroy
+    public void flushAll() {
+        log.info("Сохранение {} открытых документов перед остановкой", sessions.size());
+        sessions.values().forEach(session -> flush(session, true));
+    }
+
+    /**
+     * Восстанавливает документы, чьи операции попали в журнал, но не дошли до снимка в таблице documents,
+     * например после аварийной остановки с несохраненным состоянием в памяти.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recoverFromOperationLog() {
+        List<UUID> documentIds;
+        try {
+            documentIds = documentOperationRepository.findDocumentsWithUnsavedOperations();
+        } catch (Exception e) {
+            log.error("Не удалось проверить журнал операций: {}", e.getMessage(), e);
+            return;
+        }
+
+        for (UUID documentId : documentIds) {
+            if (sessions.containsKey(documentId)) {
+                continue;
+            }
+            try {
+                DocumentSession session = inNewTransaction(() -> load(documentId));
+                DocumentSession.Snapshot snapshot = takeSnapshot(session, true);
+                if (snapshot != null) {
+                    writeSnapshot(documentId, snapshot);
+                }
+            } catch (Exception e) {
+                log.error("Не удалось восстановить документ {} из журнала: {}", documentId, e.getMessage(), e);
+            }
+        }
+    }
+
+    private void flush(DocumentSession session, boolean forceSnapshot) {
+        synchronized (session) {
+            DocumentSession.Snapshot snapshot = session.execute(() -> takeSnapshot(session, forceSnapshot));
+            if (snapshot == null) {
+                return;
+            }
+            LogWrite write = appendLog(session.getDocumentId(), snapshot);
+            if (write == LogWrite.DIVERGED) {
+                closeWithoutSaving(session);
+                return;
+            }
+            boolean saved = writeSnapshot(session.getDocumentId(), snapshot);
+            session.execute(() -> {
+                settle(session, snapshot, write == LogWrite.WRITTEN, saved);
+                return null;
+            });
+        }
+    }
+
+    private DocumentSession.Snapshot takeSnapshot(DocumentSession session, boolean force) {
+        AppProperties.Collaboration settings = appProperties.getCollaboration();
+        long now = System.currentTimeMillis();
+        boolean withContent = session.hasUnsnapshottedChanges() && (force
+                || session.isSnapshotDue(now, settings.getSnapshotIntervalMs(), settings.getSnapshotOperationThreshold()));
+        if (!session.isDirty() && !withContent) {
+            return null;
+        }
+
+        if (session.getCrdt() != null) {
+            int collected = session.getCrdt().collectGarbage(now, settings.getCrdtClientTimeoutMs(),
+                    settings.getCrdtTombstoneGraceMs());
+            if (collected > 0) {
+                log.debug("Из документа {} удалено надгробий: {}", session.getDocumentId(), collected);
+            }
+        }
+        return session.takeSnapshot(withContent);
+    }
+
+    private void settle(DocumentSession session, DocumentSession.Snapshot snapshot, boolean logged, boolean saved) {
+        if (!logged) {
+            session.restore(snapshot);
+        }
+        if (saved) {
+            session.markSnapshotted(snapshot.revision());
+        }
+    }
+
+    private void awaitClosing(DocumentSession session) {
+        try {
+            session.closing().get(CLOSE_WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ожидание закрытия сессии документа прервано", e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IllegalStateException("Сессия документа " + session.getDocumentId() + " не закрылась вовремя", e);
+        }
+    }
+
+    private void closeWithoutSaving(DocumentSession session) {
+        synchronized (session) {
+            session.execute(() -> {
+                session.close();
+                return null;
+            });
+            sessions.remove(session.getDocumentId(), session);
+            session.markReleased();
+        }
+    }
+
+    private void inNewTransaction(Runnable work) {
+        inNewTransaction(() -> {
+            work.run();
+            return null;
+        });
+    }
+
+    private <T> T inNewTransaction(Supplier<T> work) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return transaction.execute(status -> work.get());
+    }
+
+    private LogWrite appendLog(UUID documentId, DocumentSession.Snapshot snapshot) {
+        if (snapshot.operations().isEmpty()) {
+            return LogWrite.WRITTEN;
+        }
+        try {
+            inNewTransaction(() -> documentOperationRepository.append(documentId, snapshot.operations()));
+            log.debug("В журнал документа {} записано операций: {}", documentId, snapshot.operations().size());
+            return LogWrite.WRITTEN;
+        } catch (DuplicateKeyException e) {
+            return reconcileLog(documentId, snapshot.operations());
+        } catch (Exception e) {
+            log.error("Ошибка при записи журнала операций документа {}: {}", documentId, e.getMessage(), e);
+            return LogWrite.FAILED;
+        }
+    }
+
+    /**
+     * Ревизия уже есть в журнале. Если там те же операции (запись прошла, но ответ до нас не дошел), дописываются
+     * только недостающие. Если другие, сессия разошлась с базой: повторять запись бессмысленно, сессию нужно
+     * закрыть без сохранения, чтобы клиенты переподключились и загрузили документ заново.
+     */
+    private LogWrite reconcileLog(UUID documentId, List<EditOperation> operations) {
+        try {
+            Map<Long, EditOperation> logged = new HashMap<>();
+            documentOperationRepository.findAfter(documentId, operations.getFirst().getRevision() - 1)
+                    .forEach(operation -> logged.put(operation.getRevision(), operation));
+            List<EditOperation> missing = new ArrayList<>();
+            for (EditOperation operation : operations) {
+                EditOperation existing = logged.get(operation.getRevision());
+                if (existing == null) {
+                    missing.add(operation);
+                } else if (!existing.equals(operation)) {
+                    log.error("Ревизия {} документа {} в журнале занята другой операцией, сессия закрывается без сохранения",
+                            operation.getRevision(), documentId);
+                    return LogWrite.DIVERGED;
+                }
+            }
+            if (!missing.isEmpty()) {
+                inNewTransaction(() -> documentOperationRepository.append(documentId, missing));
+            }
+            log.debug("В журнал документа {} дописано операций: {} из {}", documentId, missing.size(), operations.size());
+            return LogWrite.WRITTEN;
+        } catch (Exception e) {
+            log.error("Ошибка при сверке журнала операций документа {}: {}", documentId, e.getMessage(), e);
+            return LogWrite.FAILED;
+        }
+    }
+
+    private boolean writeSnapshot(UUID documentId, DocumentSession.Snapshot snapshot) {
+        if (snapshot.content() == null) {
+            return false;
+        }
+        try {
+            inNewTransaction(() -> {
+                if (snapshot.crdtState() != null) {
+                    documentRepository.updateContentAndCrdtState(documentId, snapshot.content(),
+                            snapshot.content().length(), Document.snippetOf(snapshot.content()), snapshot.updatedAt(),
+                            snapshot.revision(), snapshot.crdtState());
+                } else {
+                    documentRepository.updateContent(documentId, snapshot.content(), snapshot.content().length(),
+                            Document.snippetOf(snapshot.content()), snapshot.updatedAt(), snapshot.revision());
+                }
+            });
+            documentCache.evict(documentId);
+        } catch (Exception e) {
+            log.error("Ошибка при сохранении документа {}: {}", documentId, e.getMessage(), e);
+            return false;
+        }
+        log.debug("Документ {} сохранен на ревизии {}", documentId, snapshot.revision());
+        return true;
+    }
+
+    /**
+     * Читает снимок и хвост журнала под блокировкой строки; вызывается внутри транзакции.
+     */
+    private DocumentSession load(UUID documentId) {
+        Document document = documentRepository.lockForUpdate(documentId).isPresent()
+                ? documentRepository.findDocumentById(documentId)
+                : null;
+        if (document == null) {
+            throw new DocumentNotFoundException("Document not found with ID: " + documentId);
+        }
+        log.info("Открыта сессия редактирования документа {}", documentId);
+        RgaDocument crdt = appProperties.getCollaboration().getEngine() == AppProperties.Engine.CRDT
+                ? loadCrdt(document)
+                : null;
+        DocumentSession session = new DocumentSession(document, appProperties.getCollaboration().getHistorySize(), crdt);
+
+        List<EditOperation> tail = documentOperationRepository.findAfter(documentId, session.getRevision());
+        if (!tail.isEmpty()) {
+            replay(session, tail);
+        }
+        return session;
+    }
+
+    private void replay(DocumentSession session, List<EditOperation> tail) {
+        RgaDocument crdt = session.getCrdt();
+        long now = System.currentTimeMillis();
+        long snapshotRevision = session.getRevision();
+        for (EditOperation operation : tail) {
+            if (operation.getRevision() != session.getRevision() + 1) {
+                log.error("Разрыв в журнале документа {}: после ревизии {} следует {}",
+                        session.getDocumentId(), session.getRevision(), operation.getRevision());
+                break;
+            }
+            List<EditOperation> effects;
+            try {
+                effects = crdt == null
+                        ? List.of(operation)
+                        : crdt.integrate(operation.toBuilder().clock(null).build(), now);
+            } catch (CrdtResyncRequiredException e) {
+                log.error("Операция {} документа {} не размещена в CRDT, применяется по позиции: {}",
+                        operation.getRevision(), session.getDocumentId(), e.getMessage());
+                effects = List.of(operation);
+            }
+            effects.forEach(effect -> editOperationApplier.apply(session.getContent(), effect));
+            session.replay(operation);
+            if (operation.getServerTimestamp() != null) {
+                session.setUpdatedAt(LocalDateTime.ofInstant(Instant.ofEpochMilli(operation.getServerTimestamp()),
+                        ZoneId.systemDefault()));
+            }
+        }
+        log.warn("Документ {} восстановлен из журнала: ревизия {} -> {}",
+                session.getDocumentId(), snapshotRevision, session.getRevision());
+    }
+
+    public RgaDocument loadCrdt(Document document) {
+        String content = document.getContent() == null ? "" : document.getContent();
+        if (document.getCrdtState() != null) {
+            try {
+                RgaDocument crdt = RgaCodec.decode(document.getCrdtState());
+                if (crdt.text().equals(content)) {
+                    return crdt;
+                }
+                log.warn("Состояние CRDT документа {} устарело, оно будет построено заново по содержимому", document.getId());
+            } catch (IllegalArgumentException e) {
+                log.warn("Не удалось прочитать состояние CRDT документа {}: {}", document.getId(), e.getMessage());
+            }
+        }
+        return RgaDocument.fromText(content);
+    }
+
+    private enum LogWrite {
+        WRITTEN, FAILED, DIVERGED
+    }
+
+    private record Release(UUID userId, boolean closed, DocumentSession.Snapshot snapshot) {
+    }
+
+    public record AppliedUpdate(List<EditOperation> operations, long revision, LocalDateTime updatedAt,
+                                boolean resyncRequired) {
+    }
+}
@@ -0,0 +1,135 @@
+package dsr.practice.docseditor.service;
+
+import dsr.practice.docseditor.config.AppProperties;
+import dsr.practice.docseditor.dto.EditOperation;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Рассылка примененных операций кадрами OPERATION_BATCH. Все отправки выполняет единственный поток рассылки,
+ * поэтому кадры документа не расходятся по порядку ревизий.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class OperationBroadcastService {
+    private final SimpMessagingTemplate messagingTemplate;
+    private final AppProperties appProperties;
+
+    private final Map<UUID, Batch> batches = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "operation-broadcast");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public void enqueue(UUID documentId, List<EditOperation> operations, LocalDateTime updatedAt) {
+        long window = appProperties.getCollaboration().getBroadcastWindowMs();
+        if (window <= 0) {
+            List<EditOperation> copy = List.copyOf(operations);
+            scheduler.execute(() -> send(documentId, copy, updatedAt));
+            return;
+        }
+
+        while (true) {
+            Batch batch = batches.computeIfAbsent(documentId, id -> new Batch());
+            synchronized (batch) {
+                if (batch.retired) {
+                    continue;
+                }
+                boolean first = batch.operations.isEmpty();
+                batch.operations.addAll(operations);
+                batch.updatedAt = updatedAt;
+                if (first) {
+                    scheduler.schedule(() -> retire(documentId, batch), window, TimeUnit.MILLISECONDS);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Ставит накопленные операции документа в очередь отправки, не дожидаясь конца окна.
+     */
+    public void flush(UUID documentId) {
+        Batch batch = batches.get(documentId);
+        if (batch != null) {
+            scheduler.execute(() -> retire(documentId, batch));
+        }
+    }
+
+    /**
+     * Отправляет сообщение после всех уже принятых операций документа: накопленный пакет уходит первым,
+     * сообщение - следом тем же потоком.
+     */
+    public void sendAfterOperations(UUID documentId, String destination, Object payload) {
+        flush(documentId);
+        scheduler.execute(() -> {
+            try {
+                messagingTemplate.convertAndSend(destination, payload);
+            } catch (Exception e) {
+                log.error("Ошибка при отправке сообщения {} для документа {}: {}", destination, documentId, e.getMessage(), e);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        batches.keySet().forEach(this::flush);
+        scheduler.shutdown();
+        try {
+            if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
+                log.warn("Рассылка операций не завершилась за 5 секунд");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void retire(UUID documentId, Batch batch) {
+        synchronized (batch) {
+            if (batch.retired) {
+                return;
+            }
+            batch.retired = true;
+            batches.remove(documentId, batch);
+        }
+        send(documentId, batch.operations, batch.updatedAt);
+    }
+
+    private void send(UUID documentId, List<EditOperation> operations, LocalDateTime updatedAt) {
+        Map<String, Object> batchMessage = new HashMap<>();
+        batchMessage.put("documentId", documentId);
+        batchMessage.put("operations", operations);
+        batchMessage.put("revision", operations.getLast().getRevision());
+        batchMessage.put("updatedAt", updatedAt);
+        batchMessage.put("type", "OPERATION_BATCH");
+
+        try {
+            messagingTemplate.convertAndSend("/topic/documents/" + documentId + "/updates", batchMessage);
+            log.debug("Документу {} отправлен пакет из {} операций", documentId, operations.size());
+        } catch (Exception e) {
+            log.error("Ошибка при отправке пакета операций для документа {}: {}", documentId, e.getMessage(), e);
+        }
+    }
+
+    private static final class Batch {
+        private final List<EditOperation> operations = new ArrayList<>();
+        private LocalDateTime updatedAt;
+        private boolean retired;
+    }
+}
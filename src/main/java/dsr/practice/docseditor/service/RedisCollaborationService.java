@@ -192,17 +192,13 @@ public class RedisCollaborationService {
         String documentUsersKey = DOCUMENT_USERS_PREFIX + documentId;
 
         Set<Object> userIds = redisTemplate.opsForSet().members(documentUsersKey);
-        if (userIds != null && !userIds.isEmpty()) {
-            userIds.stream()
-                    .map(Object::toString)
-                    .map(UUID::fromString)
-                    .forEach(userId -> {
-                        String userStateKey = getUserStateKey(documentId, userId);
-                        redisTemplate.delete(userStateKey);
-                    });
+        List<String> keys = new ArrayList<>();
+        keys.add(documentUsersKey);
+        if (userIds != null) {
+            userIds.forEach(userId -> keys.add(getUserStateKey(documentId, UUID.fromString(userId.toString()))));
         }
 
-        redisTemplate.delete(documentUsersKey);
+        redisTemplate.delete(keys);
     }
 
     private String getUserStateKey(UUID documentId, UUID userId) {
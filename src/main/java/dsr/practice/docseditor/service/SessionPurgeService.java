@@ -0,0 +1,65 @@
+package dsr.practice.docseditor.service;
+
+import dsr.practice.docseditor.config.AppProperties;
+import dsr.practice.docseditor.repository.UserSessionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+
+/**
+ * Удаляет сессии с истекшим refresh-токеном из таблицы user_sessions.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(prefix = "app.sessions", name = "store", havingValue = "jpa", matchIfMissing = true)
+public class SessionPurgeService {
+    private final UserSessionRepository userSessionRepository;
+    private final AppProperties appProperties;
+    private final Counter purgedSessions;
+    private final Timer purgeTimer;
+
+    public SessionPurgeService(UserSessionRepository userSessionRepository, AppProperties appProperties,
+                               MeterRegistry meterRegistry) {
+        this.userSessionRepository = userSessionRepository;
+        this.appProperties = appProperties;
+        this.purgedSessions = Counter.builder("sessions.purged")
+                .description("Удаленные сессии с истекшим сроком действия")
+                .register(meterRegistry);
+        this.purgeTimer = Timer.builder("sessions.purge")
+                .description("Длительность очистки истекших сессий")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${app.sessions.purge-interval-ms:3600000}")
+    public void purgeExpiredSessions() {
+        AppProperties.Sessions settings = appProperties.getSessions();
+        LocalDateTime now = LocalDateTime.now();
+
+        try {
+            int total = purgeTimer.record(() -> {
+                int purged = 0;
+                for (int batch = 0; batch < settings.getPurgeMaxBatches(); batch++) {
+                    int deleted = userSessionRepository.deleteExpiredBatch(now, settings.getPurgeBatchSize());
+                    purged += deleted;
+                    purgedSessions.increment(deleted);
+                    if (deleted < settings.getPurgeBatchSize()) {
+                        break;
+                    }
+                }
+                return purged;
+            });
+
+            if (total > 0) {
+                log.info("Удалено истекших сессий: {}", total);
+            }
+        } catch (Exception e) {
+            log.error("Ошибка при очистке истекших сессий: {}", e.getMessage(), e);
+        }
+    }
+}
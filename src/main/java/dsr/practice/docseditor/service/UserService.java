@@ -2,11 +2,11 @@ package dsr.practice.docseditor.service;
 
 import dsr.practice.docseditor.config.AppProperties;
 import dsr.practice.docseditor.dto.AuthResponse;
+import dsr.practice.docseditor.dto.RefreshSession;
 import dsr.practice.docseditor.dto.RegisterRequest;
 import dsr.practice.docseditor.model.User;
-import dsr.practice.docseditor.model.UserSession;
+import dsr.practice.docseditor.repository.RefreshTokenStore;
 import dsr.practice.docseditor.repository.UserRepository;
-import dsr.practice.docseditor.repository.UserSessionRepository;
 import dsr.practice.docseditor.security.JwtTokenProvider;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
@@ -19,13 +19,14 @@ import org.springframework.web.server.ResponseStatusException;
 import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
 
 @Service
 @RequiredArgsConstructor
 public class UserService {
     private final AppProperties appProperties;
     private final UserRepository userRepository;
-    private final UserSessionRepository userSessionRepository;
+    private final RefreshTokenStore refreshTokenStore;
     private final JwtTokenProvider jwtTokenProvider;
     private final PasswordEncoder passwordEncoder;
 
@@ -52,17 +53,20 @@ public class UserService {
                 .build();
     }
 
-    @Transactional
     public AuthResponse refreshToken(String refreshToken, String deviceInfo, String ipAddress) {
-        UserSession session = userSessionRepository.findByToken(refreshToken)
+        LocalDateTime now = LocalDateTime.now();
+        RefreshTokenStore.Rotation rotation = refreshTokenStore.rotate(refreshToken, deviceInfo, ipAddress,
+                        now, jwtTokenProvider.refreshTokenExpiresAt(now))
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Неверный refresh-токен"));
+        RefreshSession session = rotation.session();
 
-        User user =session.getUser();
-
-        userSessionRepository.deleteByToken(refreshToken);
+        User user = User.builder()
+                .id(session.getUserId())
+                .username(session.getUsername())
+                .email(session.getEmail())
+                .build();
 
         String accessToken = jwtTokenProvider.generateAccessToken(user);
-        String newRefreshToken = jwtTokenProvider.generateRefreshToken(user, deviceInfo, ipAddress);
 
         Map<String, Object> userData = new HashMap<>();
         userData.put("id", user.getId().toString());
@@ -71,17 +75,18 @@ public class UserService {
 
         return AuthResponse.builder()
                 .accessToken(accessToken)
-                .refreshToken(newRefreshToken)
+                .refreshToken(rotation.token())
                 .expiresIn((int) (appProperties.getJwt().getAccessTokenExpiresMs() / 1000))
                 .user(userData)
                 .build();
     }
 
-
-    @Transactional
     public void logout(String refreshToken) {
-        userSessionRepository.findByToken(refreshToken)
-                .ifPresent(session -> userSessionRepository.deleteByToken(refreshToken));
+        refreshTokenStore.revoke(refreshToken);
+    }
+
+    public void logoutAll(UUID userId) {
+        refreshTokenStore.revokeAll(userId);
     }
 
     @Transactional
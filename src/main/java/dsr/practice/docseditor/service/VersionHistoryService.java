@@ -0,0 +1,121 @@
+package dsr.practice.docseditor.service;
+
+import dsr.practice.docseditor.config.AppProperties;
+import dsr.practice.docseditor.editor.delta.TextDelta;
+import dsr.practice.docseditor.exception.DocumentNotFoundException;
+import dsr.practice.docseditor.model.DocumentVersion;
+import dsr.practice.docseditor.repository.DocumentRepository;
+import dsr.practice.docseditor.repository.DocumentVersionRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Версии хранятся цепочкой {@link TextDelta} с полным текстом в каждой keyframe-interval-й версии.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class VersionHistoryService {
+    private final DocumentVersionRepository documentVersionRepository;
+    private final DocumentRepository documentRepository;
+    private final AppProperties appProperties;
+
+    /**
+     * sequence считается как max + 1 под блокировкой строки документа, поэтому параллельные сохранения
+     * не получают один номер.
+     */
+    @Transactional
+    public DocumentVersion save(DocumentVersion version) {
+        if (documentRepository.lockForUpdate(version.getDocumentId()).isEmpty()) {
+            throw new DocumentNotFoundException("Document not found with ID: " + version.getDocumentId());
+        }
+        String content = version.getContent() == null ? "" : version.getContent();
+        Optional<DocumentVersion> previous = documentVersionRepository.findFirstByDocumentIdOrderBySequenceDesc(
+                version.getDocumentId());
+
+        version.setSequence(previous.map(DocumentVersion::getSequence).orElse(0) + 1);
+        encode(version, content, () -> loadContent(previous.get()));
+
+        DocumentVersion saved = documentVersionRepository.saveAndFlush(version);
+        saved.setContent(content);
+        log.debug("Версия {} документа {} сохранена как {}", saved.getSequence(), version.getDocumentId(),
+                saved.getDelta() == null ? "ключевой кадр" : "дельта (" + saved.getDelta().length + " байт)");
+        return saved;
+    }
+
+    /**
+     * Заполняет keyframe или delta версии с уже назначенным sequence. Текст предыдущей версии
+     * запрашивается, только если версия хранится дельтой.
+     */
+    public void encode(DocumentVersion version, String content, Supplier<String> previousContent) {
+        int keyframeInterval = Math.max(1, appProperties.getVersions().getKeyframeInterval());
+
+        version.setContentLength(content.length());
+        version.setKeyframe(null);
+        version.setDelta(null);
+        if (version.getSequence() > 1 && (version.getSequence() - 1) % keyframeInterval != 0) {
+            try {
+                byte[] delta = TextDelta.diff(previousContent.get(), content);
+                if (delta.length < content.getBytes(StandardCharsets.UTF_8).length) {
+                    version.setDelta(delta);
+                }
+            } catch (IllegalArgumentException e) {
+                log.debug("Версия {} документа {} сохраняется ключевым кадром: {}", version.getSequence(),
+                        version.getDocumentId(), e.getMessage());
+            }
+        }
+        if (version.getDelta() == null) {
+            version.setKeyframe(content);
+        }
+    }
+
+    public String loadContent(DocumentVersion version) {
+        if (version.getContent() != null) {
+            return version.getContent();
+        }
+        if (version.getDelta() == null) {
+            version.setContent(version.getKeyframe());
+            return version.getContent();
+        }
+
+        Integer keyframe = documentVersionRepository.findKeyframeSequence(version.getDocumentId(), version.getSequence());
+        if (keyframe == null) {
+            throw new IllegalStateException("Не найден ключевой кадр для версии " + version.getId());
+        }
+        List<DocumentVersion> chain = documentVersionRepository.findByDocumentIdAndSequenceBetweenOrderBySequence(
+                version.getDocumentId(), keyframe, version.getSequence());
+        fillContents(chain);
+        version.setContent(chain.getLast().getContent());
+        return version.getContent();
+    }
+
+    /**
+     * Восстанавливает текст всех версий за один проход; список должен быть упорядочен по sequence
+     * и начинаться с ключевого кадра.
+     */
+    public void fillContents(List<DocumentVersion> versions) {
+        String previous = null;
+        for (DocumentVersion version : versions) {
+            if (version.getDelta() == null || previous != null) {
+                version.setContent(reconstruct(version, previous));
+            } else {
+                loadContent(version);
+            }
+            previous = version.getContent();
+        }
+    }
+
+    /**
+     * Текст версии по тексту предыдущей; для ключевого кадра предыдущий текст не нужен.
+     */
+    public String reconstruct(DocumentVersion version, String previous) {
+        return version.getDelta() == null ? version.getKeyframe() : TextDelta.apply(previous, version.getDelta());
+    }
+}
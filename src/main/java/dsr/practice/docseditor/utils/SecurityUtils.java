@@ -2,6 +2,7 @@ package dsr.practice.docseditor.utils;
 
 import dsr.practice.docseditor.model.User;
 import dsr.practice.docseditor.repository.UserRepository;
+import dsr.practice.docseditor.security.UserPrincipal;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -21,7 +22,11 @@ public class SecurityUtils {
         if (authentication == null || !authentication.isAuthenticated()) {
             return Optional.empty();
         }
-        
+
+        if (authentication.getPrincipal() instanceof UserPrincipal principal) {
+            return Optional.ofNullable(principal.getId());
+        }
+
         String username = authentication.getName();
         return userRepository.findByUsername(username)
                 .map(User::getId);
@@ -0,0 +1,67 @@
+package dsr.practice.docseditor.editor;
+
+import dsr.practice.docseditor.dto.EditOperation;
+import dsr.practice.docseditor.dto.OperationComponent;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EditOperationApplierTest {
+    private static final String TEXT = "0123456789";
+
+    private final EditOperationApplier applier = new EditOperationApplier();
+
+    @Test
+    void expandsComposeIntoPositionalParts() {
+        EditOperation compose = compose(1, retain(2), insert("ab"), delete(3), retain(4));
+
+        assertEquals("012ab6789", applyAll(applier.expand(List.of(compose), TEXT.length())));
+    }
+
+    @Test
+    void rejectsComposeWhoseLaterComponentRunsPastTheText() {
+        EditOperation compose = compose(0, insert("ab"), delete(2), retain(20), insert("cd"));
+
+        assertTrue(applier.expand(List.of(compose), TEXT.length()).isEmpty());
+    }
+
+    @Test
+    void rejectsComposeWithNegativeRetain() {
+        EditOperation compose = compose(5, retain(-3), insert("x"));
+
+        assertTrue(applier.expand(List.of(compose), TEXT.length()).isEmpty());
+    }
+
+    @Test
+    void checksComposeAgainstTextChangedByEarlierOperations() {
+        EditOperation shorten = EditOperation.builder().type("delete").position(0).length(5).build();
+        EditOperation compose = compose(0, retain(6), insert("x"));
+
+        assertEquals(List.of(shorten), applier.expand(List.of(shorten, compose), TEXT.length()));
+    }
+
+    private String applyAll(List<EditOperation> operations) {
+        Rope content = new Rope(TEXT);
+        operations.forEach(operation -> applier.apply(content, operation));
+        return content.toString();
+    }
+
+    private static EditOperation compose(int position, OperationComponent... components) {
+        return EditOperation.builder().type("compose").position(position).components(List.of(components)).build();
+    }
+
+    private static OperationComponent retain(int length) {
+        return OperationComponent.builder().type("retain").length(length).build();
+    }
+
+    private static OperationComponent insert(String text) {
+        return OperationComponent.builder().type("insert").text(text).build();
+    }
+
+    private static OperationComponent delete(int length) {
+        return OperationComponent.builder().type("delete").length(length).build();
+    }
+}
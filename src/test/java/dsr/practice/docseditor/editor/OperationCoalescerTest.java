@@ -0,0 +1,97 @@
+package dsr.practice.docseditor.editor;
+
+import dsr.practice.docseditor.dto.CrdtId;
+import dsr.practice.docseditor.dto.EditOperation;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+class OperationCoalescerTest {
+    private static final String TEXT = "0123456789";
+
+    private final OperationCoalescer coalescer = new OperationCoalescer();
+    private final EditOperationApplier applier = new EditOperationApplier();
+
+    static Stream<Arguments> cases() {
+        return Stream.of(
+                arguments("typing",
+                        List.of(insert("a", 0, "a"), insert("a", 1, "b"), insert("a", 2, "c")),
+                        List.of("insert@0:abc")),
+                arguments("insert elsewhere",
+                        List.of(insert("a", 0, "a"), insert("a", 5, "b")),
+                        List.of("insert@0:a", "insert@5:b")),
+                arguments("insert before run",
+                        List.of(insert("a", 3, "a"), insert("a", 3, "b")),
+                        List.of("insert@3:a", "insert@3:b")),
+                arguments("backspace",
+                        List.of(delete("a", 3, 1), delete("a", 2, 1), delete("a", 1, 1)),
+                        List.of("delete@1x3")),
+                arguments("forward delete",
+                        List.of(delete("a", 1, 1), delete("a", 1, 2), delete("a", 1, 1)),
+                        List.of("delete@1x4")),
+                arguments("delete elsewhere",
+                        List.of(delete("a", 1, 1), delete("a", 5, 1)),
+                        List.of("delete@1x1", "delete@5x1")),
+                arguments("insert then delete",
+                        List.of(insert("a", 2, "xy"), delete("a", 3, 1)),
+                        List.of("insert@2:xy", "delete@3x1")),
+                arguments("delete then insert",
+                        List.of(delete("a", 2, 1), insert("a", 2, "x")),
+                        List.of("delete@2x1", "insert@2:x")),
+                arguments("other client",
+                        List.of(insert("a", 0, "a"), insert("b", 1, "b")),
+                        List.of("insert@0:a", "insert@1:b")),
+                arguments("crdt operation breaks run",
+                        List.of(insert("a", 0, "a"),
+                                insert("a", 1, "b").toBuilder().id(new CrdtId("a", 1)).build(),
+                                insert("a", 2, "c")),
+                        List.of("insert@0:a", "insert@1:b", "insert@2:c")),
+                arguments("replace breaks run",
+                        List.of(delete("a", 0, 1), replace("a", "new"), delete("a", 0, 1)),
+                        List.of("delete@0x1", "replace:new", "delete@0x1"))
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("cases")
+    void coalescesOnlyContinuingRuns(String name, List<EditOperation> operations, List<String> expected) {
+        List<EditOperation> coalesced = coalescer.coalesce(operations);
+
+        assertEquals(expected, coalesced.stream().map(OperationCoalescerTest::describe).toList());
+        if (coalesced.stream().allMatch(operation -> operation.getId() == null)) {
+            assertEquals(apply(operations), apply(coalesced));
+        }
+    }
+
+    private String apply(List<EditOperation> operations) {
+        Rope rope = new Rope(TEXT);
+        operations.forEach(operation -> applier.apply(rope, operation));
+        return rope.toString();
+    }
+
+    private static String describe(EditOperation operation) {
+        return switch (operation.getType()) {
+            case "insert" -> "insert@" + operation.getPosition() + ":" + operation.getCharacter();
+            case "delete" -> "delete@" + operation.getPosition() + "x" + operation.deletedLength();
+            default -> operation.getType() + ":" + operation.getCharacter();
+        };
+    }
+
+    private static EditOperation insert(String clientId, int position, String text) {
+        return EditOperation.builder().clientId(clientId).type("insert").position(position).character(text).build();
+    }
+
+    private static EditOperation delete(String clientId, int position, int length) {
+        return EditOperation.builder().clientId(clientId).type("delete").position(position).length(length).build();
+    }
+
+    private static EditOperation replace(String clientId, String text) {
+        return EditOperation.builder().clientId(clientId).type("replace").character(text).build();
+    }
+}
@@ -0,0 +1,205 @@
+package dsr.practice.docseditor.editor;
+
+import dsr.practice.docseditor.dto.EditOperation;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OperationTransformerTest {
+    private static final String TEXT = "abcdef";
+
+    private final OperationTransformer transformer = new OperationTransformer();
+    private final EditOperationApplier applier = new EditOperationApplier();
+
+    @Test
+    void concurrentInsertAndDeletePairsConverge() {
+        List<EditOperation> operations = new ArrayList<>();
+        for (int position = 0; position <= TEXT.length(); position++) {
+            operations.add(insert(position, "X"));
+            operations.add(insert(position, "YZ"));
+            for (int length = 1; position + length <= TEXT.length(); length++) {
+                operations.add(delete(position, length));
+            }
+        }
+
+        for (EditOperation a : operations) {
+            for (EditOperation b : operations) {
+                OperationTransformer.Pair transformed = transformer.transform(List.of(a), List.of(b), false);
+                String afterB = apply(TEXT, List.of(b), transformed.left());
+                String afterA = apply(TEXT, List.of(a), transformed.right());
+                assertEquals(afterA, afterB, () -> a + " / " + b);
+            }
+        }
+    }
+
+    @Test
+    void clientsConvergeWhenBatchesInterleave() {
+        Server server = new Server("abc");
+        Client alice = new Client("alice", "abc");
+        Client bob = new Client("bob", "abc");
+
+        bob.edit(insert(0, "X"));
+        alice.edit(insert(3, "Y"));
+        bob.flush(server);
+        alice.flush(server);
+        assertEquals("XabcY", server.content.toString());
+
+        alice.edit(insert(4, "Z"));
+        alice.acknowledge(server);
+        assertEquals(2, server.history.size(), "ack arrived before Bob's operation, the next batch must wait");
+
+        bob.acknowledge(server);
+        bob.receive(server, 1);
+        bob.edit(delete(1, 1));
+        bob.flush(server);
+        assertEquals("XbcY", server.content.toString());
+
+        alice.receive(server, 3);
+        alice.acknowledge(server);
+        alice.receive(server, 4);
+        bob.acknowledge(server);
+        bob.receive(server, 4);
+
+        assertEquals("XbcYZ", server.content.toString());
+        assertEquals(server.content.toString(), alice.content.toString());
+        assertEquals(server.content.toString(), bob.content.toString());
+    }
+
+    @Test
+    void concurrentInsertsAtSamePositionKeepServerOrder() {
+        Server server = new Server("");
+        Client alice = new Client("alice", "");
+        Client bob = new Client("bob", "");
+
+        alice.edit(insert(0, "A"));
+        bob.edit(insert(0, "B"));
+        bob.edit(insert(1, "C"));
+        alice.flush(server);
+        bob.flush(server);
+
+        alice.acknowledge(server);
+        alice.receive(server, server.history.size());
+        bob.receive(server, server.history.size());
+        bob.acknowledge(server);
+
+        assertEquals("ABC", server.content.toString());
+        assertEquals("ABC", alice.content.toString());
+        assertEquals("ABC", bob.content.toString());
+    }
+
+    private String apply(String text, List<EditOperation> first, List<EditOperation> second) {
+        Rope rope = new Rope(text);
+        for (EditOperation operation : first) {
+            assertTrue(applier.apply(rope, operation), operation::toString);
+        }
+        for (EditOperation operation : second) {
+            assertTrue(applier.apply(rope, operation), operation::toString);
+        }
+        return rope.toString();
+    }
+
+    private static EditOperation insert(int position, String text) {
+        return EditOperation.builder().type("insert").position(position).character(text).build();
+    }
+
+    private static EditOperation delete(int position, int length) {
+        return EditOperation.builder().type("delete").position(position).length(length).build();
+    }
+
+    /**
+     * Сервер как в DocumentSessionService.apply: пакет преобразуется против всех операций после baseRevision.
+     */
+    private final class Server {
+        private final Rope content;
+        private final List<EditOperation> history = new ArrayList<>();
+
+        private Server(String text) {
+            this.content = new Rope(text);
+        }
+
+        private long receive(List<EditOperation> batch, long baseRevision) {
+            List<EditOperation> copies = batch.stream().map(operation -> operation.toBuilder().build()).toList();
+            List<EditOperation> concurrent = List.copyOf(history.subList((int) baseRevision, history.size()));
+            for (EditOperation operation : transformer.transform(copies, concurrent)) {
+                if (applier.apply(content, operation)) {
+                    operation.setRevision(history.size() + 1L);
+                    history.add(operation);
+                }
+            }
+            return history.size();
+        }
+    }
+
+    /**
+     * Клиент как в WebSocketService.ts: один пакет в полете, набранное после отправки ждет подтверждения.
+     */
+    private final class Client {
+        private final String clientId;
+        private final Rope content;
+        private long revision;
+        private List<EditOperation> sent = List.of();
+        private List<EditOperation> pending = new ArrayList<>();
+        private boolean awaitingAck;
+        private long ack;
+        private Long acknowledged;
+
+        private Client(String clientId, String text) {
+            this.clientId = clientId;
+            this.content = new Rope(text);
+        }
+
+        private void edit(EditOperation operation) {
+            operation.setClientId(clientId);
+            assertTrue(applier.apply(content, operation));
+            pending.add(operation);
+        }
+
+        private void flush(Server server) {
+            if (awaitingAck || pending.isEmpty()) {
+                return;
+            }
+            sent = pending;
+            pending = new ArrayList<>();
+            awaitingAck = true;
+            acknowledged = null;
+            ack = server.receive(sent, revision);
+        }
+
+        private void acknowledge(Server server) {
+            acknowledged = ack;
+            completeIfAcknowledged(server);
+        }
+
+        private void receive(Server server, long upTo) {
+            for (EditOperation operation : List.copyOf(server.history.subList((int) revision, (int) upTo))) {
+                revision = operation.getRevision();
+                if (clientId.equals(operation.getClientId())) {
+                    sent = List.of();
+                    continue;
+                }
+                OperationTransformer.Pair afterSent = transformer.transform(List.of(operation), sent, true);
+                OperationTransformer.Pair afterPending = transformer.transform(afterSent.left(), pending, true);
+                sent = afterSent.right();
+                pending = new ArrayList<>(afterPending.right());
+                for (EditOperation remote : afterPending.left()) {
+                    assertTrue(applier.apply(content, remote), remote::toString);
+                }
+            }
+            completeIfAcknowledged(server);
+        }
+
+        private void completeIfAcknowledged(Server server) {
+            if (!awaitingAck || acknowledged == null || revision < acknowledged) {
+                return;
+            }
+            sent = List.of();
+            awaitingAck = false;
+            acknowledged = null;
+            flush(server);
+        }
+    }
+}
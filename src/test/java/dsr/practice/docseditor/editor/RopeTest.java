@@ -0,0 +1,113 @@
+package dsr.practice.docseditor.editor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RopeTest {
+
+    @Test
+    void randomEditsMatchStringBuilder() {
+        Random random = new Random(42);
+        Rope rope = new Rope(text(random, 3 * Rope.MAX_CHUNK));
+        StringBuilder expected = new StringBuilder(rope.toString());
+
+        for (int step = 0; step < 5_000; step++) {
+            int position = random.nextInt(expected.length() + 1);
+            if (expected.isEmpty() || random.nextInt(3) > 0) {
+                String text = text(random, random.nextInt(10) == 0 ? Rope.MAX_CHUNK + 10 : 1 + random.nextInt(8));
+                rope.insert(position, text);
+                expected.insert(position, text);
+            } else {
+                int count = Math.min(expected.length() - position,
+                        random.nextInt(10) == 0 ? Rope.MAX_CHUNK + 10 : random.nextInt(8));
+                rope.delete(position, count);
+                expected.delete(position, position + count);
+            }
+
+            assertEquals(expected.length(), rope.length());
+            if (step % 100 == 0) {
+                assertEquals(expected.toString(), rope.toString());
+            }
+        }
+        assertEquals(expected.toString(), rope.toString());
+    }
+
+    @Test
+    void substringAndCharAtCrossChunkBoundaries() {
+        String text = text(new Random(7), 4 * Rope.MAX_CHUNK + 17);
+        Rope rope = new Rope(text);
+
+        for (int start = 0; start < text.length(); start += Rope.MAX_CHUNK / 3) {
+            int end = Math.min(text.length(), start + Rope.MAX_CHUNK + 5);
+            assertEquals(text.substring(start, end), rope.substring(start, end));
+            assertEquals(text.charAt(start), rope.charAt(start));
+        }
+        assertEquals("", rope.substring(10, 10));
+        assertEquals(text.charAt(text.length() - 1), rope.charAt(text.length() - 1));
+    }
+
+    @Test
+    void splitAndMergeAtEveryPositionOfSmallText() {
+        String text = "abcdefgh";
+        for (int position = 0; position <= text.length(); position++) {
+            for (int count = 0; position + count <= text.length(); count++) {
+                Rope rope = new Rope(text);
+                rope.delete(position, count);
+                rope.insert(position, "XYZ");
+                String expected = text.substring(0, position) + "XYZ" + text.substring(position + count);
+                assertEquals(expected, rope.toString());
+            }
+        }
+    }
+
+    @Test
+    void deletesMergeShrunkChunksWithNeighbours() {
+        String text = text(new Random(3), 4 * Rope.MAX_CHUNK);
+        Rope rope = new Rope(text);
+        StringBuilder expected = new StringBuilder(text);
+
+        while (expected.length() > Rope.MIN_CHUNK) {
+            int position = expected.length() / 3;
+            rope.delete(position, 1);
+            expected.deleteCharAt(position);
+        }
+
+        assertEquals(expected.toString(), rope.toString());
+        assertEquals(1, rope.chunkCount());
+    }
+
+    @Test
+    void replaceAndEmptyText() {
+        Rope rope = new Rope();
+        assertTrue(rope.isEmpty());
+        rope.insert(0, "hello");
+        rope.replace("world");
+        assertEquals("world", rope.toString());
+        rope.delete(0, 5);
+        assertTrue(rope.isEmpty());
+        assertEquals("", rope.toString());
+    }
+
+    @Test
+    void rejectsOutOfRangeEdits() {
+        Rope rope = new Rope("abc");
+        assertThrows(IndexOutOfBoundsException.class, () -> rope.insert(4, "x"));
+        assertThrows(IndexOutOfBoundsException.class, () -> rope.delete(2, 2));
+        assertThrows(IndexOutOfBoundsException.class, () -> rope.charAt(3));
+        assertThrows(IndexOutOfBoundsException.class, () -> rope.substring(2, 1));
+        assertEquals("abc", rope.toString());
+    }
+
+    private static String text(Random random, int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append((char) ('a' + random.nextInt(26)));
+        }
+        return text.toString();
+    }
+}
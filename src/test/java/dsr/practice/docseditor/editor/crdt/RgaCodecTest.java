@@ -0,0 +1,110 @@
+package dsr.practice.docseditor.editor.crdt;
+
+import dsr.practice.docseditor.dto.CrdtId;
+import dsr.practice.docseditor.dto.EditOperation;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RgaCodecTest {
+    private static final long NOW = 1_000_000L;
+
+    @Test
+    void roundTripKeepsElementsTombstonesAndClocks() {
+        RgaDocument document = RgaDocument.fromText("hello world");
+        document.integrate(insert(5, ","), NOW);
+        for (int i = 0; i < 3; i++) {
+            document.integrate(delete(7), NOW);
+        }
+        document.integrate(remoteInsert(new CrdtId("alice", 100), new CrdtId(RgaDocument.SERVER_CLIENT_ID, 1), "😀é"), NOW);
+        document.integrate(delete(0), NOW);
+
+        RgaDocument decoded = RgaCodec.decode(RgaCodec.encode(document));
+
+        assertEquals(document.text(), decoded.text());
+        assertEquals(document.length(), decoded.length());
+        assertEquals(document.size(), decoded.size());
+        assertEquals(document.getClock(), decoded.getClock());
+        assertEquals(document.getCollectedUpTo(), decoded.getCollectedUpTo());
+
+        List<Element> original = elements(document);
+        List<Element> restored = elements(decoded);
+        assertEquals(original.size(), restored.size());
+        for (int i = 0; i < original.size(); i++) {
+            Element expected = original.get(i);
+            Element actual = restored.get(i);
+            assertEquals(expected.id(), actual.id());
+            assertEquals(expected.deleted(), actual.deleted());
+            if (expected.deleted()) {
+                assertTrue(actual.deletedAt() >= expected.deletedAt(), "надгробие не должно собираться раньше");
+            } else {
+                assertEquals(expected.value(), actual.value());
+            }
+        }
+        assertArrayEquals(RgaCodec.encode(decoded), RgaCodec.encode(RgaCodec.decode(RgaCodec.encode(decoded))));
+    }
+
+    @Test
+    void decodedDocumentIntegratesLikeTheOriginal() {
+        RgaDocument document = RgaDocument.fromText("abc");
+        document.integrate(remoteInsert(new CrdtId("bob", 10), new CrdtId(RgaDocument.SERVER_CLIENT_ID, 2), "XY"), NOW);
+        RgaDocument decoded = RgaCodec.decode(RgaCodec.encode(document));
+
+        EditOperation concurrent = remoteInsert(new CrdtId("alice", 10), new CrdtId(RgaDocument.SERVER_CLIENT_ID, 2), "Z");
+        document.integrate(concurrent.toBuilder().build(), NOW);
+        decoded.integrate(concurrent.toBuilder().build(), NOW);
+
+        assertEquals(document.text(), decoded.text());
+        assertEquals(document.getClock(), decoded.getClock());
+    }
+
+    @Test
+    void roundTripSplitsLongRuns() {
+        String text = "x".repeat(40_000);
+        RgaDocument document = RgaDocument.fromText(text);
+
+        RgaDocument decoded = RgaCodec.decode(RgaCodec.encode(document));
+
+        assertEquals(text, decoded.text());
+        assertEquals(40_000, decoded.getClock());
+    }
+
+    @Test
+    void rejectsUnknownFormatVersion() {
+        byte[] state = RgaCodec.encode(RgaDocument.fromText("abc"));
+        state[0] = 99;
+
+        assertThrows(IllegalArgumentException.class, () -> RgaCodec.decode(state));
+    }
+
+    private static EditOperation insert(int position, String text) {
+        return EditOperation.builder().type("insert").position(position).character(text).build();
+    }
+
+    private static EditOperation delete(int position) {
+        return EditOperation.builder().type("delete").position(position).build();
+    }
+
+    private static EditOperation remoteInsert(CrdtId id, CrdtId origin, String text) {
+        return EditOperation.builder().type("insert").id(id).origin(origin).character(text).build();
+    }
+
+    private static List<Element> elements(RgaDocument document) {
+        List<Element> elements = new ArrayList<>();
+        document.forEachRun((id, text, length, deleted, deletedAt) -> {
+            for (int i = 0; i < length; i++) {
+                elements.add(new Element(id.plus(i), deleted ? '\0' : text.charAt(i), deleted, deletedAt));
+            }
+        });
+        return elements;
+    }
+
+    private record Element(CrdtId id, char value, boolean deleted, long deletedAt) {
+    }
+}
@@ -0,0 +1,145 @@
+package dsr.practice.docseditor.editor.crdt;
+
+import dsr.practice.docseditor.dto.CrdtId;
+import dsr.practice.docseditor.dto.EditOperation;
+import dsr.practice.docseditor.exception.CrdtResyncRequiredException;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RgaDocumentTest {
+    private static final long NOW = 1_000_000L;
+    private static final long TIMEOUT = 60_000;
+    private static final long GRACE = 1_000;
+
+    @Test
+    void collectsTombstonesAfterGraceWindowWhenNoClientClockIsKnown() {
+        RgaDocument document = RgaDocument.fromText("abc");
+        document.integrate(delete(1), NOW);
+
+        assertEquals(0, document.collectGarbage(NOW, TIMEOUT, GRACE));
+        assertEquals(0, document.collectGarbage(NOW + GRACE / 2, TIMEOUT, GRACE));
+        assertEquals(3, document.size());
+
+        assertEquals(1, document.collectGarbage(NOW + GRACE, TIMEOUT, GRACE));
+        assertEquals(2, document.size());
+        assertEquals("ac", document.text());
+    }
+
+    @Test
+    void collectsTombstonesOnceSilentClientTimesOut() {
+        RgaDocument document = RgaDocument.fromText("abc");
+        document.observe("bob", 0, NOW);
+        document.integrate(delete(1), NOW);
+
+        document.collectGarbage(NOW, TIMEOUT, GRACE);
+        assertEquals(0, document.collectGarbage(NOW + GRACE, TIMEOUT, GRACE));
+
+        assertEquals(1, document.collectGarbage(NOW + TIMEOUT + 1, TIMEOUT, GRACE));
+        assertEquals(2, document.size());
+    }
+
+    @Test
+    void keepsTombstonesWithinGraceWindow() {
+        RgaDocument document = RgaDocument.fromText("abc");
+        document.integrate(delete(1), NOW);
+        document.observe("alice", document.getClock(), NOW);
+
+        assertEquals(0, document.collectGarbage(NOW, TIMEOUT, GRACE));
+        assertEquals(0, document.collectGarbage(NOW + GRACE / 2, TIMEOUT, GRACE));
+        assertEquals(3, document.size());
+
+        assertEquals(1, document.collectGarbage(NOW + GRACE, TIMEOUT, GRACE));
+        assertEquals(2, document.size());
+    }
+
+    @Test
+    void keepsTombstonesNotYetSeenByEveryClient() {
+        RgaDocument document = RgaDocument.fromText("abc");
+        document.observe("bob", document.getClock(), NOW);
+        document.integrate(delete(1), NOW);
+        document.observe("alice", document.getClock(), NOW);
+
+        document.collectGarbage(NOW, TIMEOUT, GRACE);
+        assertEquals(0, document.collectGarbage(NOW + GRACE, TIMEOUT, GRACE));
+
+        document.observe("bob", document.getClock(), NOW + GRACE);
+        assertEquals(1, document.collectGarbage(NOW + 2 * GRACE, TIMEOUT, GRACE));
+    }
+
+    @Test
+    void insertAfterCollectedOriginRequiresResync() {
+        RgaDocument document = RgaDocument.fromText("abc");
+        document.integrate(delete(1), NOW);
+        document.observe("alice", document.getClock(), NOW);
+        document.collectGarbage(NOW, TIMEOUT, GRACE);
+        assertEquals(1, document.collectGarbage(NOW + GRACE, TIMEOUT, GRACE));
+
+        EditOperation late = remoteInsert(new CrdtId("alice", 10), new CrdtId(RgaDocument.SERVER_CLIENT_ID, 2), "Q");
+
+        assertThrows(CrdtResyncRequiredException.class, () -> document.integrate(late, NOW + GRACE));
+        assertEquals("ac", document.text());
+    }
+
+    @Test
+    void replicasConvergeWhateverTheDeliveryOrder() {
+        CrdtId a = new CrdtId(RgaDocument.SERVER_CLIENT_ID, 1);
+        CrdtId b = new CrdtId(RgaDocument.SERVER_CLIENT_ID, 2);
+        List<EditOperation> alice = List.of(
+                remoteInsert(new CrdtId("alice", 4), a, "XY"),
+                remoteDelete(b, 1));
+        List<EditOperation> bob = List.of(
+                remoteInsert(new CrdtId("bob", 4), a, "Z"),
+                remoteInsert(new CrdtId("bob", 5), new CrdtId("bob", 4), "W"),
+                remoteDelete(b, 2));
+
+        RgaDocument first = RgaDocument.fromText("abc");
+        RgaDocument second = RgaDocument.fromText("abc");
+        alice.forEach(operation -> first.integrate(operation.toBuilder().build(), NOW));
+        bob.forEach(operation -> first.integrate(operation.toBuilder().build(), NOW));
+        second.integrate(bob.get(0).toBuilder().build(), NOW);
+        second.integrate(alice.get(0).toBuilder().build(), NOW);
+        second.integrate(bob.get(1).toBuilder().build(), NOW);
+        second.integrate(bob.get(2).toBuilder().build(), NOW);
+        second.integrate(alice.get(1).toBuilder().build(), NOW);
+
+        assertEquals("aZWXY", first.text());
+        assertEquals(first.text(), second.text());
+    }
+
+    @Test
+    void keepsTypedTextInOneRun() {
+        RgaDocument document = RgaDocument.fromText("abc");
+        for (int i = 0; i < 100; i++) {
+            document.integrate(insert(3 + i, "x"), NOW);
+        }
+        assertEquals(1, document.runCount());
+
+        document.integrate(delete(50), NOW);
+        assertEquals(3, document.runCount());
+
+        document.collectGarbage(NOW, TIMEOUT, GRACE);
+        assertEquals(1, document.collectGarbage(NOW + GRACE, TIMEOUT, GRACE));
+        assertEquals(2, document.runCount());
+        assertEquals("abc" + "x".repeat(99), document.text());
+    }
+
+    private static EditOperation insert(int position, String text) {
+        return EditOperation.builder().type("insert").position(position).character(text).build();
+    }
+
+    private static EditOperation delete(int position) {
+        return EditOperation.builder().type("delete").position(position).build();
+    }
+
+    private static EditOperation remoteDelete(CrdtId id, int length) {
+        return EditOperation.builder().type("delete").id(id).length(length).build();
+    }
+
+    private static EditOperation remoteInsert(CrdtId id, CrdtId origin, String text) {
+        return EditOperation.builder().type("insert").id(id).origin(origin).character(text).build();
+    }
+}
@@ -0,0 +1,108 @@
+package dsr.practice.docseditor.editor.delta;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TextDeltaTest {
+    private static final String[] ALPHABET = {"a", "b", "c", " ", "ж", "щ", "😀", "👍", "𝄞", "\n"};
+
+    @Test
+    void randomEditsRoundTrip() {
+        Random random = new Random(11);
+        String base = text(random, 2_000);
+        for (int step = 0; step < 500; step++) {
+            String target = edit(random, base);
+
+            assertEquals(target, TextDelta.apply(base, TextDelta.diff(base, target)), "шаг " + step);
+            base = target;
+        }
+    }
+
+    @Test
+    void rejectsLoneSurrogateInInsertedText() {
+        String base = "b".repeat(32);
+
+        assertThrows(IllegalArgumentException.class, () -> TextDelta.diff(base, base + "\uD83D" + base));
+    }
+
+    @Test
+    void surrogatePairsAreNotSplitAtCopyBoundaries() {
+        String padding = "b".repeat(32);
+        // U+1F600 и U+1F601 различаются только младшим суррогатом, U+1F600 и U+10600 - только старшим
+        String base = padding + "\uD83D\uDE00" + padding;
+        String[] targets = {
+                padding + "\uD83D\uDE01" + padding,
+                padding + "\uD801\uDE00" + padding,
+                padding + "\uD83D\uDE00\uD83D\uDE01" + padding,
+                "x" + padding + "\uD801\uDE00" + padding.substring(1)
+        };
+
+        for (String target : targets) {
+            assertEquals(target, TextDelta.apply(base, TextDelta.diff(base, target)));
+            assertEquals(base, TextDelta.apply(target, TextDelta.diff(target, base)));
+        }
+    }
+
+    @Test
+    void smallEditOfLargeTextGivesSmallDelta() {
+        String base = text(new Random(3), 100_000);
+        int middle = base.offsetByCodePoints(0, base.codePointCount(0, base.length()) / 2);
+        String target = base.substring(0, middle) + "вставка" + base.substring(middle);
+
+        byte[] delta = TextDelta.diff(base, target);
+
+        assertTrue(delta.length < 64, "размер дельты " + delta.length);
+        assertEquals(target, TextDelta.apply(base, delta));
+    }
+
+    @Test
+    void emptyTexts() {
+        assertEquals("", TextDelta.apply("", TextDelta.diff("", "")));
+        assertEquals("abc", TextDelta.apply("", TextDelta.diff("", "abc")));
+        assertEquals("", TextDelta.apply("abc", TextDelta.diff("abc", "")));
+    }
+
+    @Test
+    void rejectsUnknownVersionAndCorruptDelta() {
+        byte[] delta = TextDelta.diff("hello world, hello world", "hello world!");
+
+        byte[] version = delta.clone();
+        version[0] = 99;
+        assertThrows(IllegalArgumentException.class, () -> TextDelta.apply("hello world, hello world", version));
+
+        byte[] truncated = Arrays.copyOf(delta, delta.length - 1);
+        assertThrows(IllegalArgumentException.class, () -> TextDelta.apply("hello world, hello world", truncated));
+    }
+
+    private static String edit(Random random, String base) {
+        int position = random.nextInt(base.length() + 1);
+        if (position < base.length() && Character.isLowSurrogate(base.charAt(position))) {
+            position--;
+        }
+        StringBuilder target = new StringBuilder(base);
+        if (random.nextBoolean() || base.isEmpty()) {
+            target.insert(position, text(random, 1 + random.nextInt(20)));
+        } else {
+            int end = Math.min(base.length(), position + 1 + random.nextInt(20));
+            if (end < base.length() && Character.isLowSurrogate(base.charAt(end))) {
+                end++;
+            }
+            target.delete(position, end);
+        }
+        return target.toString();
+    }
+
+    private static String text(Random random, int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append(ALPHABET[random.nextInt(ALPHABET.length)]);
+        }
+        return text.toString();
+    }
+}
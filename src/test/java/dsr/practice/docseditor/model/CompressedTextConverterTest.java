@@ -0,0 +1,94 @@
+package dsr.practice.docseditor.model;
+
+import dsr.practice.docseditor.config.AppProperties;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompressedTextConverterTest {
+    private final AppProperties properties = new AppProperties();
+    private final CompressedTextConverter converter = new CompressedTextConverter(properties);
+
+    @Test
+    void compressesLargeTextAndRestoresIt() {
+        String text = "Совместное редактирование 😀 документа.\n".repeat(2_000);
+
+        byte[] stored = converter.convertToDatabaseColumn(text);
+
+        assertEquals(0, stored[0]);
+        assertTrue(stored.length < text.getBytes(StandardCharsets.UTF_8).length / 10, "размер " + stored.length);
+        assertEquals(text, converter.convertToEntityAttribute(stored));
+    }
+
+    @Test
+    void keepsTextBelowThresholdAsUtf8() {
+        String shortText = "короткий текст";
+        assertArrayEquals(shortText.getBytes(StandardCharsets.UTF_8), converter.convertToDatabaseColumn(shortText));
+
+        String belowThreshold = "z".repeat(properties.getStorage().getCompressionThreshold() - 1);
+        assertArrayEquals(belowThreshold.getBytes(StandardCharsets.UTF_8), converter.convertToDatabaseColumn(belowThreshold));
+
+        byte[] atThreshold = converter.convertToDatabaseColumn(belowThreshold + "z");
+        assertEquals(0, atThreshold[0]);
+    }
+
+    @Test
+    void roundTripsTextStartingWithNul() {
+        String[] texts = {"\u0000", "\u0000\u0001abc", "\u0000\u0001" + "q".repeat(2_000), "\u0000" + "ab😀".repeat(1_000)};
+        for (String text : texts) {
+            byte[] stored = converter.convertToDatabaseColumn(text);
+
+            assertEquals(text, converter.convertToEntityAttribute(stored));
+        }
+
+        byte[] stored = converter.convertToDatabaseColumn("\u0000\u0001abc");
+        assertArrayEquals(new byte[]{0, 0, 0, 1, 'a', 'b', 'c'}, stored);
+    }
+
+    @Test
+    void roundTripsAcrossThresholdAndLevels() {
+        for (int level = 1; level <= 9; level += 4) {
+            properties.getStorage().setCompressionLevel(level);
+            for (int length : new int[]{0, 1, 1023, 1024, 1025, 70_000}) {
+                String text = "ab😀".repeat(length / 4 + 1).substring(0, length);
+                if (!text.isEmpty() && Character.isHighSurrogate(text.charAt(text.length() - 1))) {
+                    text = text.substring(0, text.length() - 1);
+                }
+
+                assertEquals(text, converter.convertToEntityAttribute(converter.convertToDatabaseColumn(text)));
+            }
+        }
+    }
+
+    @Test
+    void readsPlainTextWhenCompressionDisabled() {
+        String text = "x".repeat(10_000);
+        byte[] compressed = converter.convertToDatabaseColumn(text);
+        properties.getStorage().setCompressionEnabled(false);
+
+        assertArrayEquals(text.getBytes(StandardCharsets.UTF_8), converter.convertToDatabaseColumn(text));
+        assertEquals(text, converter.convertToEntityAttribute(compressed));
+    }
+
+    @Test
+    void handlesNullAndRejectsCorruptValues() {
+        assertNull(converter.convertToDatabaseColumn(null));
+        assertNull(converter.convertToEntityAttribute(null));
+        assertEquals("", converter.convertToEntityAttribute(new byte[0]));
+
+        byte[] stored = converter.convertToDatabaseColumn("y".repeat(10_000));
+        byte[] truncated = Arrays.copyOf(stored, stored.length - 4);
+        assertThrows(IllegalStateException.class, () -> converter.convertToEntityAttribute(truncated));
+
+        byte[] unknownFormat = stored.clone();
+        unknownFormat[1] = 7;
+        assertThrows(IllegalStateException.class, () -> converter.convertToEntityAttribute(unknownFormat));
+    }
+}
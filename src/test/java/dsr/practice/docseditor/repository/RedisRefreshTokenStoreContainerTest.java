@@ -0,0 +1,128 @@
+package dsr.practice.docseditor.repository;
+
+import dsr.practice.docseditor.dto.RefreshSession;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Lua-скрипты хранилища против настоящего Redis; без Docker тесты пропускаются.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class RedisRefreshTokenStoreContainerTest {
+    private static final UUID USER_ID = UUID.randomUUID();
+
+    @Container
+    private static final GenericContainer<?> REDIS = new GenericContainer<>(DockerImageName.parse("redis:7.2-alpine"))
+            .withExposedPorts(6379);
+
+    private static LettuceConnectionFactory connectionFactory;
+
+    private StringRedisTemplate redisTemplate;
+    private RedisRefreshTokenStore store;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = new LettuceConnectionFactory(REDIS.getHost(), REDIS.getMappedPort(6379));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+        redisTemplate.execute(connection -> {
+            connection.serverCommands().flushAll();
+            return null;
+        }, true);
+        store = new RedisRefreshTokenStore(redisTemplate);
+    }
+
+    @Test
+    void rotationReplacesTokenOnce() {
+        String token = store.issue(session(LocalDateTime.now().plusDays(1)));
+
+        Optional<RefreshTokenStore.Rotation> rotated = rotate(token);
+
+        assertTrue(rotated.isPresent());
+        assertEquals(USER_ID, rotated.get().session().getUserId());
+        assertEquals("alice", rotated.get().session().getUsername());
+        assertEquals("alice@example.com", rotated.get().session().getEmail());
+        assertFalse(rotate(token).isPresent());
+        assertEquals(1, indexSize());
+        assertTrue(rotate(rotated.get().token()).isPresent());
+    }
+
+    @Test
+    void revokeRemovesTokenAndIndexEntry() {
+        String token = store.issue(session(LocalDateTime.now().plusDays(1)));
+
+        store.revoke(token);
+
+        assertFalse(rotate(token).isPresent());
+        assertEquals(0, indexSize());
+    }
+
+    @Test
+    void revokeAllRemovesEveryTokenOfUser() {
+        String first = store.issue(session(LocalDateTime.now().plusDays(1)));
+        String second = store.issue(session(LocalDateTime.now().plusDays(1)));
+
+        store.revokeAll(USER_ID);
+
+        assertFalse(rotate(first).isPresent());
+        assertFalse(rotate(second).isPresent());
+        assertTrue(redisTemplate.keys("refresh:*").isEmpty());
+    }
+
+    @Test
+    void writePrunesExpiredHashesFromIndex() throws InterruptedException {
+        store.issue(session(LocalDateTime.now().plusNanos(100_000_000)));
+        Thread.sleep(200);
+
+        store.issue(session(LocalDateTime.now().plusDays(1)));
+
+        assertEquals(1, indexSize());
+    }
+
+    private Optional<RefreshTokenStore.Rotation> rotate(String token) {
+        return store.rotate(token, "device", "127.0.0.1", LocalDateTime.now(), LocalDateTime.now().plusDays(1));
+    }
+
+    private long indexSize() {
+        Long size = redisTemplate.opsForZSet().zCard("refresh:{" + USER_ID + "}:tokens");
+        return size == null ? 0 : size;
+    }
+
+    private static RefreshSession session(LocalDateTime expiresAt) {
+        return RefreshSession.builder()
+                .userId(USER_ID)
+                .username("alice")
+                .email("alice@example.com")
+                .deviceInfo("device")
+                .ipAddress("127.0.0.1")
+                .createdAt(LocalDateTime.now())
+                .expiresAt(expiresAt)
+                .build();
+    }
+}
@@ -0,0 +1,126 @@
+package dsr.practice.docseditor.repository;
+
+import dsr.practice.docseditor.dto.RefreshSession;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+class RedisRefreshTokenStoreTest {
+    private static final UUID USER_ID = UUID.randomUUID();
+    private static final String TOKEN_A = USER_ID + ".a";
+
+    private final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+    private final RedisRefreshTokenStore store = new RedisRefreshTokenStore(redisTemplate);
+
+    @Test
+    void storesOnlyTokenHash() {
+        String token = store.issue(RefreshSession.builder()
+                .userId(USER_ID)
+                .username("alice")
+                .createdAt(LocalDateTime.now())
+                .expiresAt(LocalDateTime.now().plusDays(1))
+                .build());
+
+        assertTrue(token.startsWith(USER_ID + "."));
+        List<String> keys = executedKeys();
+        assertEquals(List.of(tokenKey(sha256(token)), userKey()), keys);
+        assertTrue(keys.stream().noneMatch(key -> key.contains(token)));
+        verifyNoMoreInteractions(redisTemplate);
+    }
+
+    @Test
+    void rotationMovesSessionToNewTokenInOneScript() {
+        when(redisTemplate.<List<String>>execute(anyScript(), anyList(), any(Object[].class)))
+                .thenReturn(List.of(USER_ID.toString(), "alice", ""));
+
+        Optional<RefreshTokenStore.Rotation> rotated = rotate(TOKEN_A);
+
+        assertTrue(rotated.isPresent());
+        String token = rotated.get().token();
+        RefreshSession session = rotated.get().session();
+        assertTrue(token.startsWith(USER_ID + "."));
+        assertEquals(USER_ID, session.getUserId());
+        assertEquals("alice", session.getUsername());
+        assertNull(session.getEmail());
+        assertEquals("device", session.getDeviceInfo());
+        assertEquals(List.of(tokenKey(sha256(token)), userKey(), tokenKey(sha256(TOKEN_A))), executedKeys());
+        verifyNoMoreInteractions(redisTemplate);
+    }
+
+    @Test
+    void tokenWithoutOwnerPrefixDoesNotTouchSessions() {
+        assertFalse(rotate("refresh-a").isPresent());
+        store.revoke("refresh-a");
+
+        verifyNoInteractions(redisTemplate);
+    }
+
+    @Test
+    void lostRotationRaceLeavesNothingBehind() {
+        assertFalse(rotate(TOKEN_A).isPresent());
+
+        executedKeys();
+        verifyNoMoreInteractions(redisTemplate);
+    }
+
+    @Test
+    void revokeRemovesTokenAndItsSetEntryInOneScript() {
+        store.revoke(TOKEN_A);
+
+        assertEquals(List.of(tokenKey(sha256(TOKEN_A)), userKey()), executedKeys());
+        verifyNoMoreInteractions(redisTemplate);
+    }
+
+    private Optional<RefreshTokenStore.Rotation> rotate(String token) {
+        return store.rotate(token, "device", "127.0.0.1", LocalDateTime.now(), LocalDateTime.now().plusDays(1));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> executedKeys() {
+        ArgumentCaptor<List<String>> keys = ArgumentCaptor.forClass(List.class);
+        verify(redisTemplate).execute(anyScript(), keys.capture(), any(Object[].class));
+        return keys.getValue();
+    }
+
+    private static <T> RedisScript<T> anyScript() {
+        return any();
+    }
+
+    private static String userKey() {
+        return "refresh:{" + USER_ID + "}:tokens";
+    }
+
+    private static String tokenKey(String hash) {
+        return "refresh:{" + USER_ID + "}:token:" + hash;
+    }
+
+    private static String sha256(String token) {
+        try {
+            return HexFormat.of().formatHex(
+                    MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package dsr.practice.docseditor.security;
+
+import dsr.practice.docseditor.config.AppProperties;
+import dsr.practice.docseditor.model.User;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class JwtTokenProviderTest {
+    private static final String SECRET = "d3587b318c4720a6cc3eed4c7cf9f3819206ef76893fd025";
+
+    private final UserDetailsService userDetailsService = mock(UserDetailsService.class);
+    private JwtTokenProvider provider;
+
+    @BeforeEach
+    void setUp() {
+        AppProperties appProperties = new AppProperties();
+        appProperties.getJwt().setSecret(SECRET);
+        appProperties.getJwt().setAccessTokenExpiresMs(TimeUnit.HOURS.toMillis(1));
+        provider = new JwtTokenProvider(appProperties, null, userDetailsService);
+    }
+
+    @Test
+    void resolvesPrincipalFromUserIdClaimWithoutQueries() {
+        UUID userId = UUID.randomUUID();
+        String token = provider.generateAccessToken(User.builder()
+                .id(userId)
+                .username("alice")
+                .email("alice@example.com")
+                .build());
+
+        Authentication authentication = provider.getAuthentication(token);
+
+        assertEquals(userId, ((UserPrincipal) authentication.getPrincipal()).getId());
+        assertEquals("alice", authentication.getName());
+        verify(userDetailsService, never()).loadUserByUsername("alice");
+    }
+
+    @Test
+    void loadsLegacyTokenPrincipalOnce() {
+        UserPrincipal stored = new UserPrincipal(UUID.randomUUID(), "bob", null);
+        when(userDetailsService.loadUserByUsername("bob")).thenReturn(stored);
+        String token = legacyToken("bob");
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(stored, provider.getAuthentication(token).getPrincipal());
+        }
+
+        verify(userDetailsService, times(1)).loadUserByUsername("bob");
+    }
+
+    @Test
+    void doesNotCacheMissingLegacyUser() {
+        when(userDetailsService.loadUserByUsername("ghost")).thenThrow(new UsernameNotFoundException("ghost"));
+        String token = legacyToken("ghost");
+
+        for (int i = 0; i < 2; i++) {
+            assertNull(provider.getAuthentication(token));
+        }
+
+        verify(userDetailsService, times(2)).loadUserByUsername("ghost");
+    }
+
+    private static String legacyToken(String username) {
+        return Jwts.builder()
+                .setSubject(username)
+                .setIssuedAt(new Date())
+                .setExpiration(new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)))
+                .signWith(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)), SignatureAlgorithm.HS256)
+                .compact();
+    }
+}
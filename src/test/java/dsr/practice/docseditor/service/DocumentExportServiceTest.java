@@ -0,0 +1,144 @@
+package dsr.practice.docseditor.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dsr.practice.docseditor.dto.ExportRecord;
+import dsr.practice.docseditor.dto.ImportResultDto;
+import dsr.practice.docseditor.editor.DocumentSession;
+import dsr.practice.docseditor.exception.DocumentImportException;
+import dsr.practice.docseditor.model.Document;
+import dsr.practice.docseditor.model.DocumentVersion;
+import dsr.practice.docseditor.repository.DocumentRepository;
+import dsr.practice.docseditor.repository.DocumentVersionBatchRepository;
+import dsr.practice.docseditor.repository.DocumentVersionRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DocumentExportServiceTest {
+    private final DocumentRepository documentRepository = mock(DocumentRepository.class);
+    private final DocumentVersionBatchRepository batchRepository = mock(DocumentVersionBatchRepository.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    private final DocumentSessionService documentSessionService = mock(DocumentSessionService.class);
+    private final List<UUID> savedIds = new ArrayList<>();
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private DocumentExportService service;
+
+    @BeforeEach
+    void setUp() {
+        when(documentRepository.save(any(Document.class))).thenAnswer(invocation -> {
+            Document document = invocation.getArgument(0);
+            document.setId(UUID.randomUUID());
+            savedIds.add(document.getId());
+            return document;
+        });
+        service = new DocumentExportService(documentRepository, mock(DocumentVersionRepository.class), batchRepository,
+                documentSessionService, mock(VersionHistoryService.class), mock(EntityManager.class),
+                objectMapper, new TransactionTemplate(transactionManager));
+    }
+
+    @Test
+    void commitsEachDocumentWithItsFirstVersionBatch() {
+        ImportResultDto result = service.importDocuments(ndjson(
+                document("a"), version("a1"), version("a2"), document("b"), version("b1"), document("c")),
+                UUID.randomUUID());
+
+        assertEquals(new ImportResultDto(3, 3), result);
+        verify(documentRepository).updateVersionCounter(savedIds.get(0), 2);
+        verify(documentRepository).updateVersionCounter(savedIds.get(1), 1);
+        verify(transactionManager, times(3)).commit(any());
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<DocumentVersion>> batches = ArgumentCaptor.forClass(List.class);
+        verify(batchRepository, times(2)).insert(batches.capture());
+        assertEquals(savedIds.get(0), batches.getAllValues().get(0).get(0).getDocumentId());
+        assertEquals(savedIds.get(1), batches.getAllValues().get(1).get(0).getDocumentId());
+    }
+
+    @Test
+    void reportsCommittedProgressWhenRecordIsInvalid() {
+        InputStream in = ndjson(document("a"), version("a1"), document("b"), "{\"type\":\"snapshot\"}");
+
+        DocumentImportException e = assertThrows(DocumentImportException.class,
+                () -> service.importDocuments(in, UUID.randomUUID()));
+
+        assertEquals(new ImportResultDto(1, 1), e.getImported());
+        assertInstanceOf(IllegalArgumentException.class, e.getCause());
+        verify(documentRepository).updateVersionCounter(savedIds.get(0), 1);
+    }
+
+    @Test
+    void rollsBackDocumentWhenItsFirstVersionBatchFails() {
+        doThrow(new DataIntegrityViolationException("duplicate")).when(batchRepository).insert(anyList());
+        InputStream in = ndjson(document("a"), version("a1"), document("b"), version("b1"));
+
+        DocumentImportException e = assertThrows(DocumentImportException.class,
+                () -> service.importDocuments(in, UUID.randomUUID()));
+
+        assertEquals(new ImportResultDto(0, 0), e.getImported());
+        assertInstanceOf(DataIntegrityViolationException.class, e.getCause());
+        verify(transactionManager, never()).commit(any());
+        verify(transactionManager).rollback(any());
+    }
+
+    @Test
+    void exportsOpenDocumentFromItsSession() throws Exception {
+        UUID ownerId = UUID.randomUUID();
+        LocalDateTime stored = LocalDateTime.of(2024, 1, 1, 12, 0);
+        LocalDateTime edited = stored.plusMinutes(5);
+        Document document = Document.builder().id(UUID.randomUUID()).title("a").content("stale").updatedAt(stored).build();
+        when(documentRepository.streamByOwner(ownerId)).thenReturn(Stream.of(document));
+        when(documentSessionService.findSnapshot(document.getId()))
+                .thenReturn(Optional.of(new DocumentSession.Snapshot("live", edited, 3, null, List.of())));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.exportDocuments(ownerId, out);
+
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            zip.getNextEntry();
+            ExportRecord record = objectMapper.readValue(new String(zip.readAllBytes(), StandardCharsets.UTF_8).lines()
+                    .findFirst().orElseThrow(), ExportRecord.class);
+            assertEquals("live", record.getContent());
+            assertEquals(edited, record.getUpdatedAt());
+        }
+    }
+
+    private static String document(String title) {
+        return "{\"type\":\"document\",\"title\":\"" + title + "\",\"content\":\"\"}";
+    }
+
+    private static String version(String content) {
+        return "{\"type\":\"version\",\"content\":\"" + content + "\"}";
+    }
+
+    private static InputStream ndjson(String... records) {
+        return new ByteArrayInputStream(String.join("\n", records).getBytes(StandardCharsets.UTF_8));
+    }
+}
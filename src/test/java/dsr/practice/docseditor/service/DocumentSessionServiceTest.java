@@ -0,0 +1,358 @@
+package dsr.practice.docseditor.service;
+
+import dsr.practice.docseditor.config.AppProperties;
+import dsr.practice.docseditor.dto.EditOperation;
+import dsr.practice.docseditor.editor.EditOperationApplier;
+import dsr.practice.docseditor.editor.OperationCoalescer;
+import dsr.practice.docseditor.editor.OperationTransformer;
+import dsr.practice.docseditor.editor.crdt.RgaCodec;
+import dsr.practice.docseditor.model.Document;
+import dsr.practice.docseditor.repository.DocumentOperationRepository;
+import dsr.practice.docseditor.repository.DocumentRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.Answer;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DocumentSessionServiceTest {
+    private static final UUID DOCUMENT_ID = UUID.randomUUID();
+    private static final UUID USER_ID = UUID.randomUUID();
+
+    private final DocumentRepository documentRepository = mock(DocumentRepository.class);
+    private final DocumentOperationRepository operationRepository = mock(DocumentOperationRepository.class);
+    private final AppProperties appProperties = new AppProperties();
+    private final NavigableMap<Long, EditOperation> operationLog = new TreeMap<>();
+    private String storedContent = "abc";
+    private long storedRevision;
+    private byte[] storedCrdtState;
+    private int contentWrites;
+    private DocumentSessionService service;
+
+    @BeforeEach
+    void setUp() {
+        when(documentRepository.lockForUpdate(DOCUMENT_ID)).thenReturn(Optional.of(DOCUMENT_ID));
+        when(documentRepository.findDocumentById(DOCUMENT_ID)).thenAnswer(invocation -> Document.builder()
+                .id(DOCUMENT_ID)
+                .content(storedContent)
+                .createdBy(USER_ID)
+                .updatedAt(LocalDateTime.now())
+                .revision(storedRevision)
+                .crdtState(storedCrdtState)
+                .build());
+        when(documentRepository.updateContent(eq(DOCUMENT_ID), anyString(), anyInt(), any(), any(), anyLong()))
+                .thenAnswer(invocation -> writeContent(invocation.getArgument(1), invocation.getArgument(5), null));
+        when(documentRepository.updateContentAndCrdtState(eq(DOCUMENT_ID), anyString(), anyInt(), any(), any(),
+                anyLong(), any()))
+                .thenAnswer(invocation -> writeContent(invocation.getArgument(1), invocation.getArgument(5),
+                        invocation.getArgument(6)));
+        doAnswer(appendToLog()).when(operationRepository).append(eq(DOCUMENT_ID), anyList());
+        when(operationRepository.findAfter(eq(DOCUMENT_ID), anyLong())).thenAnswer(invocation ->
+                List.copyOf(operationLog.tailMap(invocation.<Long>getArgument(1), false).values()));
+        service = newService();
+    }
+
+    @Test
+    void transformsStaleBatchAgainstNewerRevisions() {
+        service.acquire(DOCUMENT_ID, USER_ID, "alice");
+        service.acquire(DOCUMENT_ID, USER_ID, "bob");
+
+        DocumentSessionService.AppliedUpdate first = edit(0L, insert(0, "X"));
+        DocumentSessionService.AppliedUpdate second = edit(0L, insert(3, "Y"));
+
+        assertEquals(1, first.revision());
+        assertEquals(2, second.revision());
+        assertEquals(4, second.operations().get(0).getPosition());
+        assertEquals("XabcY", content());
+    }
+
+    @Test
+    void failedOperationStopsBatchAndRequestsResync() {
+        EditOperationApplier applier = spy(new EditOperationApplier());
+        doThrow(new IllegalStateException("broken")).when(applier)
+                .apply(any(), argThat(operation -> "Y".equals(operation.getCharacter())));
+        service = newService(applier);
+        service.acquire(DOCUMENT_ID, USER_ID, "alice");
+
+        DocumentSessionService.AppliedUpdate update = service.execute(DOCUMENT_ID, session -> service.apply(session,
+                List.of(insert(0, "X"), insert(4, "Y"), insert(0, "Z")), 0L, "client"));
+
+        assertTrue(update.resyncRequired());
+        assertEquals(1, update.revision());
+        assertEquals(List.of("X"), update.operations().stream().map(EditOperation::getCharacter).toList());
+        assertEquals("Xabc", content());
+    }
+
+    @Test
+    void writeBehindLogsOperationsOnceThresholdIsReached() {
+        appProperties.getCollaboration().setFlushOperationThreshold(2);
+        service.acquire(DOCUMENT_ID, USER_ID, "alice");
+
+        edit(0L, insert(0, "X"));
+        service.flushDueSessions();
+        assertTrue(operationLog.isEmpty());
+
+        edit(1L, insert(4, "Y"));
+        service.flushDueSessions();
+        assertEquals(List.of(1L, 2L), List.copyOf(operationLog.keySet()));
+        assertEquals(List.of("X", "Y"), loggedCharacters());
+        assertEquals("abc", storedContent);
+        assertEquals(0, contentWrites);
+    }
+
+    @Test
+    void snapshotRewritesContentOnceThresholdIsReached() {
+        appProperties.getCollaboration().setSnapshotOperationThreshold(2);
+        service.acquire(DOCUMENT_ID, USER_ID, "alice");
+
+        edit(0L, insert(0, "X"));
+        service.flushDueSessions();
+        assertEquals("abc", storedContent);
+
+        edit(1L, insert(4, "Y"));
+        service.flushDueSessions();
+        assertEquals("XabcY", storedContent);
+        assertEquals(2, storedRevision);
+        assertEquals(1, contentWrites);
+        assertEquals(List.of("X", "Y"), loggedCharacters());
+    }
+
+    @Test
+    void writeThroughKeepsOperationsWhenLogWriteFails() {
+        appProperties.getCollaboration().setWriteBehind(false);
+        doAnswer(invocation -> {
+            throw new IllegalStateException("database is down");
+        }).doAnswer(appendToLog()).when(operationRepository).append(eq(DOCUMENT_ID), anyList());
+        service.acquire(DOCUMENT_ID, USER_ID, "alice");
+
+        edit(0L, insert(0, "X"));
+        assertTrue(operationLog.isEmpty());
+
+        edit(1L, insert(4, "Y"));
+        assertEquals(List.of(1L, 2L), List.copyOf(operationLog.keySet()));
+        assertEquals(List.of("X", "Y"), loggedCharacters());
+    }
+
+    @Test
+    void writeBehindRetriesOperationsAfterFailedFlush() {
+        appProperties.getCollaboration().setFlushOperationThreshold(1);
+        doAnswer(invocation -> {
+            throw new IllegalStateException("database is down");
+        }).doAnswer(appendToLog()).when(operationRepository).append(eq(DOCUMENT_ID), anyList());
+        service.acquire(DOCUMENT_ID, USER_ID, "alice");
+
+        edit(0L, insert(0, "X"));
+        service.flushDueSessions();
+        assertTrue(operationLog.isEmpty());
+
+        service.flushDueSessions();
+        assertEquals(List.of(1L), List.copyOf(operationLog.keySet()));
+        assertEquals(List.of("X"), loggedCharacters());
+    }
+
+    @Test
+    void alreadyLoggedRevisionCountsAsWritten() {
+        appProperties.getCollaboration().setFlushOperationThreshold(1);
+        Answer<Void> append = appendToLog();
+        doAnswer(invocation -> {
+            append.answer(invocation);
+            throw new IllegalStateException("connection reset");
+        }).doAnswer(append).when(operationRepository).append(eq(DOCUMENT_ID), anyList());
+        service.acquire(DOCUMENT_ID, USER_ID, "alice");
+
+        edit(0L, insert(0, "X"));
+        service.flushDueSessions();
+        service.flushDueSessions();
+        service.flushDueSessions();
+        verify(operationRepository, times(2)).append(eq(DOCUMENT_ID), anyList());
+
+        edit(1L, insert(0, "Y"));
+        service.flushDueSessions();
+        assertEquals(List.of(1L, 2L), List.copyOf(operationLog.keySet()));
+        assertEquals(List.of("X", "Y"), loggedCharacters());
+        assertEquals("YXabc", content());
+    }
+
+    @Test
+    void revisionTakenByAnotherOperationClosesSessionWithoutSaving() {
+        appProperties.getCollaboration().setFlushOperationThreshold(1);
+        service.acquire(DOCUMENT_ID, USER_ID, "alice");
+        operationLog.put(1L, insert(0, "Z").toBuilder().revision(1L).build());
+
+        edit(0L, insert(0, "X"));
+        service.flushDueSessions();
+
+        assertTrue(service.find(DOCUMENT_ID).isEmpty());
+        assertEquals(List.of("Z"), loggedCharacters());
+        assertEquals("abc", storedContent);
+        assertEquals(0, contentWrites);
+    }
+
+    @Test
+    void replayStopsAtGapInLog() {
+        operationLog.put(1L, insert(0, "X").toBuilder().revision(1L).build());
+        operationLog.put(3L, insert(0, "Z").toBuilder().revision(3L).build());
+
+        service.acquire(DOCUMENT_ID, USER_ID, "alice");
+
+        assertEquals("Xabc", content());
+        assertEquals(1, service.find(DOCUMENT_ID).orElseThrow().getRevision());
+    }
+
+    @Test
+    void releaseOfLastEditorWritesSnapshot() {
+        service.acquire(DOCUMENT_ID, USER_ID, "alice");
+        service.acquire(DOCUMENT_ID, USER_ID, "alice-tab");
+        edit(0L, insert(3, "d"));
+
+        assertEquals(Optional.empty(), service.release(DOCUMENT_ID, "alice"));
+        assertEquals("abc", storedContent);
+
+        assertEquals(Optional.of(USER_ID), service.release(DOCUMENT_ID, "alice-tab"));
+        assertEquals("abcd", storedContent);
+        assertEquals(1, storedRevision);
+        assertEquals(List.of("d"), loggedCharacters());
+        assertTrue(service.find(DOCUMENT_ID).isEmpty());
+    }
+
+    @Test
+    void shutdownWritesOpenSessions() {
+        service.acquire(DOCUMENT_ID, USER_ID, "alice");
+        edit(0L, insert(0, "X"));
+
+        service.flushAll();
+
+        assertEquals("Xabc", storedContent);
+        assertEquals(1, storedRevision);
+        assertEquals(List.of("X"), loggedCharacters());
+    }
+
+    @Test
+    void reopenedSessionReplaysLoggedTail() {
+        appProperties.getCollaboration().setFlushOperationThreshold(1);
+        service.acquire(DOCUMENT_ID, USER_ID, "alice");
+        edit(0L, insert(0, "X"));
+        service.flushDueSessions();
+        assertEquals("abc", storedContent);
+
+        service = newService();
+        service.acquire(DOCUMENT_ID, USER_ID, "alice");
+
+        assertEquals("Xabc", content());
+        assertEquals(1, service.find(DOCUMENT_ID).orElseThrow().getRevision());
+    }
+
+    @Test
+    void crdtEngineKeepsStateInSyncWithContent() {
+        appProperties.getCollaboration().setEngine(AppProperties.Engine.CRDT);
+        service.acquire(DOCUMENT_ID, USER_ID, "alice");
+
+        DocumentSessionService.AppliedUpdate update = edit(0L, insert(1, "😀"));
+        service.flushAll();
+
+        assertFalse(update.resyncRequired());
+        assertEquals("a😀bc", content());
+        assertEquals("a😀bc", storedContent);
+        assertEquals("a😀bc", RgaCodec.decode(storedCrdtState).text());
+        assertArrayEquals(storedCrdtState, service.findCrdtState(DOCUMENT_ID).orElseThrow());
+    }
+
+    private DocumentSessionService newService() {
+        return newService(new EditOperationApplier());
+    }
+
+    private DocumentSessionService newService(EditOperationApplier editOperationApplier) {
+        return new DocumentSessionService(documentRepository, operationRepository, appProperties,
+                editOperationApplier, new OperationTransformer(), new OperationCoalescer(),
+                mock(DocumentCache.class), new InMemoryTransactionManager());
+    }
+
+    private DocumentSessionService.AppliedUpdate edit(Long baseRevision, EditOperation operation) {
+        return service.execute(DOCUMENT_ID, session -> service.apply(session, List.of(operation), baseRevision, "client"));
+    }
+
+    private String content() {
+        return service.execute(DOCUMENT_ID, session -> session.getContent().toString());
+    }
+
+    private List<String> loggedCharacters() {
+        return operationLog.values().stream().map(EditOperation::getCharacter).toList();
+    }
+
+    private int writeContent(String content, long revision, byte[] crdtState) {
+        if (storedRevision > revision) {
+            return 0;
+        }
+        storedContent = content;
+        storedRevision = revision;
+        if (crdtState != null) {
+            storedCrdtState = crdtState;
+        }
+        contentWrites++;
+        return 1;
+    }
+
+    private Answer<Void> appendToLog() {
+        return invocation -> {
+            List<EditOperation> operations = invocation.getArgument(1);
+            for (EditOperation operation : operations) {
+                if (operationLog.containsKey(operation.getRevision())) {
+                    throw new DuplicateKeyException("revision " + operation.getRevision());
+                }
+            }
+            operations.forEach(operation -> operationLog.put(operation.getRevision(), operation.toBuilder().build()));
+            return null;
+        };
+    }
+
+    private static EditOperation insert(int position, String text) {
+        return EditOperation.builder().type("insert").position(position).character(text).build();
+    }
+
+    private static class InMemoryTransactionManager extends AbstractPlatformTransactionManager {
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}